@@ -1,28 +1,24 @@
 package gitlet;
-import java.io.Serializable;
 import java.io.File;
 
-/** Class to store file.
+/** Class to store file. A blob names a working file and the id of its
+ *  contents, as hashed by Repo.blob; the contents themselves are saved
+ *  by the object store straight from the file.
  * @author Simon Zhan
  *   */
-public class Blob implements  Serializable {
+public class Blob {
     /** Name of the file.**/
     private String _head;
     /** Hashcode of the content.**/
     private String _hashcode;
-    /** A list to store content in byte form. **/
-    private byte[] _content;
-    /** String detail about the content. **/
-    private String _contentstring;
 
-    /** Constructor of the blob class.
-     * @param temp file passed in. **/
-    Blob(File temp) {
+    /** Constructor of a blob whose contents are already known to have
+     *  the given id.
+     * @param temp file passed in.
+     * @param hashcode id of its contents. **/
+    Blob(File temp, String hashcode) {
         _head = temp.getName();
-        _content = Utils.readContents(temp);
-        _contentstring = Utils.readContentsAsString(temp);
-        _hashcode = Utils.sha1(_contentstring);
-
+        _hashcode = hashcode;
     }
 
     /** Method to return hashcode of the blob.**/
@@ -30,16 +26,6 @@ public class Blob implements  Serializable {
         return _hashcode;
     }
 
-    /** Method to return content of the blob.**/
-    byte[] contentreturn() {
-        return _content;
-    }
-
-    /** Method to return content in the string form. **/
-    String contentinstring() {
-        return _contentstring;
-    }
-
     /** Method to return name of the blob.**/
     String namereturn() {
         return _head;
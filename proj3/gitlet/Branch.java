@@ -1,69 +1,158 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-/** Class to store branch.
+/** Class to store branch. Each branch is kept in its own file under
+ *  the refs directory, holding the id of the commit at its head.
  * @author Simon Zhan */
-public class Branch implements Serializable {
+public class Branch {
 
     /** Name of the branch. **/
     private String _name;
-    /** boolean value to judge whether this branch is current branch. **/
-    private boolean _current;
-    /** furtherest part of the commit in this branch. **/
-    private Commit _byfar;
+    /** ID of the furtherest commit in this branch. **/
+    private String _byfar;
+    /** True if the head of the branch changed since it was read. **/
+    private boolean _changed;
 
     /** Constructor to a branch.
-     * @param temp Commit.
-     * @param name String. */
-    public Branch(Commit temp, String name) {
+     * @param name String.
+     * @param head String. */
+    public Branch(String name, String head) {
         _name = name;
-        _byfar = temp;
-        _current = false;
+        _byfar = head;
+        _changed = true;
     }
 
+    /** Return true if NAME can name a branch, so that its file lies
+     *  under the refs directory: it is made of segments separated by
+     *  slashes, none of them empty, "." or "..", and holds no backslash,
+     *  colon or NUL, which some systems read as separators or drives.
+     * @param name String.
+     * @return boolean return. */
+    static boolean valid(String name) {
+        if (name.isEmpty() || name.contains("\\") || name.contains(":")
+            || name.contains("\0")) {
+            return false;
+        }
+        for (String segment : name.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".")
+                || segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-    /** Return name of the branch. **/
-    public String getname() {
-        return _name;
+    /** Return true if the file of branch NAME would lie inside that of
+     *  one of the branches NAMES, or hold one of them.
+     * @param name String.
+     * @param names Collection.
+     * @return boolean return. */
+    static boolean clashes(String name, Collection<String> names) {
+        for (String other : names) {
+            if (other.startsWith(name + "/") || name.startsWith(other + "/")) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    /** Return is this branch the current branch. **/
-    public boolean getcurrent() {
-        return _current;
+    /** Return the branch NAME stored under REFS, or null if it does not
+     *  exist or is not a valid name.
+     * @param refs File.
+     * @param name String.
+     * @return Branch return. */
+    static Branch read(File refs, String name) {
+        if (!valid(name)) {
+            return null;
+        }
+        File f = Utils.join(refs, name);
+        if (!f.isFile()) {
+            return null;
+        }
+        return parse(name, Utils.readContents(f));
     }
 
-    /** Return the furtherest commit in the branch. **/
-    public Commit getbyfar() {
-        return _byfar;
+    /** Return the branch NAME whose file holds CONTENTS.
+     * @param name String.
+     * @param contents byte[].
+     * @return Branch return. */
+    static Branch parse(String name, byte[] contents) {
+        Branch result = new Branch(name,
+                new String(contents, StandardCharsets.UTF_8).trim());
+        result._changed = false;
+        return result;
     }
 
-    /** Change the furtherest commit in the branch.
-     * @param temp string.*/
-    void change(Commit temp) {
-        _byfar = temp;
+    /** Save this branch under REFS when JOURNAL commits.
+     * @param refs File.
+     * @param journal Journal. */
+    void write(File refs, Journal journal) {
+        journal.replace(Utils.join(refs, _name),
+                _byfar.getBytes(StandardCharsets.UTF_8));
+        _changed = false;
     }
 
-    /** Change current state.**/
-    void changetoCurr() {
-        _current = true;
+    /** Delete the branch NAME stored under REFS when JOURNAL commits.
+     * @param refs File.
+     * @param name String.
+     * @param journal Journal. */
+    static void delete(File refs, String name, Journal journal) {
+        journal.delete(Utils.join(refs, name));
     }
 
-    /** Change current state.**/
-    void changetoPast() {
-        _current = false;
+    /** Return the names of all branches stored under REFS.
+     * @param refs File.
+     * @return List return. */
+    static List<String> names(File refs) {
+        ArrayList<String> result = new ArrayList<>();
+        names(refs, "", result);
+        return result;
     }
 
-    /** Chnage the byfar commit.
-     * @param temp string.*/
-    void changebyfar(Commit temp) {
-        _byfar = temp;
+    /** Add the names of branches in DIR, prefixed by PREFIX, to RESULT.
+     * @param dir File.
+     * @param prefix String.
+     * @param result ArrayList. */
+    private static void names(File dir, String prefix,
+                              ArrayList<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                names(f, prefix + f.getName() + "/", result);
+            } else {
+                result.add(prefix + f.getName());
+            }
+        }
+    }
+
+    /** Return name of the branch. **/
+    public String getname() {
+        return _name;
+    }
+
+    /** Return the id of the furtherest commit in the branch. **/
+    public String getbyfar() {
+        return _byfar;
+    }
+
+    /** Return true if the branch must be saved. **/
+    boolean ischanged() {
+        return _changed;
     }
 
-    /** Remove the current branch. **/
-    void remove() {
-        _name = null;
-        _byfar = null;
+    /** Change the furtherest commit in the branch.
+     * @param temp string.*/
+    void changebyfar(String temp) {
+        _byfar = temp;
+        _changed = true;
     }
 
 }
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+
+/** A Bloom filter of the paths each commit changed, kept beside the
+ *  commit graph with one filter per commit, in the same order. A path
+ *  changed by a commit differs between its tree and its first parent's;
+ *  the directories above such a path count as changed too. A filter
+ *  never misses a path the commit changed, so a commit whose filter
+ *  does not hold a path certainly left it alone, and its trees need not
+ *  be read. It sometimes holds paths that were not changed, about one
+ *  time in a hundred.
+ *
+ *  The file holds, for each commit, the length of its filter in bytes
+ *  and then the filter. A length of -1 stands for a commit that changed
+ *  too many paths to be worth a filter, which could have changed any.
+ *  New filters are appended to it.
+ *  @author Simon Zhan */
+class ChangedPaths {
+
+    /** First bytes of a changed-paths file. **/
+    private static final int MAGIC = 0x43485047;
+    /** Version of the file format. **/
+    private static final int VERSION = 1;
+    /** Bits of filter per path. **/
+    private static final int BITS_PER_PATH = 10;
+    /** Bits set for each path. **/
+    private static final int HASHES = 7;
+    /** Length of the smallest filter in bytes. **/
+    private static final int MIN_LENGTH = 8;
+    /** Most paths a commit may change and still have a filter. **/
+    static final int MAX_PATHS = 512;
+
+    /** File holding the filters. **/
+    private final File _file;
+    /** Filter of each commit, by position, or null for commits
+     *  without one. **/
+    private final ArrayList<byte[]> _filters;
+    /** Number of filters already saved in the file. **/
+    private int _written;
+
+    /** Constructor for an empty list of filters kept in FILE.
+     * @param file File. */
+    private ChangedPaths(File file) {
+        _file = file;
+        _filters = new ArrayList<>();
+    }
+
+    /** Return the filters stored in FILE, or none if FILE does not
+     *  exist. A record cut short at the end of the file is dropped.
+     * @param file File.
+     * @return ChangedPaths return. */
+    static ChangedPaths read(File file) {
+        ChangedPaths result = new ChangedPaths(file);
+        if (!file.exists()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unrecognized changed-paths file.");
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException excp) {
+                    break;
+                }
+                if (length < 0) {
+                    result._filters.add(null);
+                } else {
+                    byte[] filter = new byte[length];
+                    try {
+                        in.readFully(filter);
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    result._filters.add(filter);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        result._written = result.size();
+        return result;
+    }
+
+    /** Append the filters added since these were read to the file. */
+    void write() {
+        if (_written == size()) {
+            return;
+        }
+        boolean fresh = !_file.exists();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_file, true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int i = _written; i < size(); i += 1) {
+                byte[] filter = _filters.get(i);
+                if (filter == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(filter.length);
+                    out.write(filter);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _written = size();
+    }
+
+    /** Rewrite the file with only the filters at POSITIONS, in that
+     *  order, and return the filters it then holds.
+     * @param positions int[].
+     * @return ChangedPaths return. */
+    ChangedPaths retain(int[] positions) {
+        write();
+        File tmp = new File(_file.getPath() + ".tmp");
+        boolean a = tmp.delete();
+        ChangedPaths kept = new ChangedPaths(tmp);
+        for (int pos : positions) {
+            if (pos >= size()) {
+                break;
+            }
+            kept._filters.add(_filters.get(pos));
+        }
+        kept.write();
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return read(_file);
+    }
+
+    /** Return the number of commits with a filter.
+     * @return int return. */
+    int size() {
+        return _filters.size();
+    }
+
+    /** Add the filter of the commit at the next position, which changed
+     *  the files PATHS.
+     * @param paths Collection. */
+    void add(Collection<String> paths) {
+        HashSet<String> all = new HashSet<>();
+        for (String path : paths) {
+            for (int k = path.indexOf('/'); k >= 0;
+                 k = path.indexOf('/', k + 1)) {
+                all.add(path.substring(0, k));
+            }
+            all.add(path);
+        }
+        if (all.size() > MAX_PATHS) {
+            _filters.add(null);
+            return;
+        }
+        byte[] filter = new byte[Math.max(MIN_LENGTH,
+                (all.size() * BITS_PER_PATH + 7) / 8)];
+        for (String path : all) {
+            long bits = filter.length * 8L;
+            int[] h = hash(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h[0] + (long) i * h[1], bits);
+                filter[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+            }
+        }
+        _filters.add(filter);
+    }
+
+    /** Return false if the commit at position POS certainly did not
+     *  change PATH, which names a file or directory.
+     * @param pos int.
+     * @param path String.
+     * @return boolean return. */
+    boolean mayHaveChanged(int pos, String path) {
+        if (pos >= size() || _filters.get(pos) == null) {
+            return true;
+        }
+        byte[] filter = _filters.get(pos);
+        long bits = filter.length * 8L;
+        int[] h = hash(path);
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = Math.floorMod(h[0] + (long) i * h[1], bits);
+            if ((filter[(int) (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the two hashes of PATH from which the bits it sets are
+     *  chosen.
+     * @param path String.
+     * @return int[] return. */
+    private static int[] hash(String path) {
+        ByteBuffer bytes = ByteBuffer.wrap(Utils.fromHex(Utils.sha1(path)));
+        return new int[] { bytes.getInt(), bytes.getInt() | 1 };
+    }
+}
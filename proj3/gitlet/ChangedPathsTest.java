@@ -0,0 +1,66 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Tests of the ChangedPaths class.
+ *  @author Simon Zhan
+ */
+public class ChangedPathsTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    @Test
+    public void noFalseNegatives() throws IOException {
+        File file = _dirs.file("changed-paths");
+        ChangedPaths paths = ChangedPaths.read(file);
+        for (int i = 0; i < 50; i += 1) {
+            paths.add(Arrays.asList("d" + i + "/e/f" + i + ".txt",
+                                    "top" + i));
+        }
+        paths.write();
+        paths = ChangedPaths.read(file);
+        assertEquals(50, paths.size());
+        int falsePositives = 0;
+        for (int i = 0; i < 50; i += 1) {
+            assertTrue(paths.mayHaveChanged(i, "d" + i + "/e/f" + i + ".txt"));
+            assertTrue(paths.mayHaveChanged(i, "d" + i + "/e"));
+            assertTrue(paths.mayHaveChanged(i, "d" + i));
+            assertTrue(paths.mayHaveChanged(i, "top" + i));
+            for (int j = 0; j < 50; j += 1) {
+                if (j != i && paths.mayHaveChanged(i, "top" + j)) {
+                    falsePositives += 1;
+                }
+            }
+        }
+        assertTrue(falsePositives < 50 * 49 / 20);
+        assertTrue(paths.mayHaveChanged(50, "anything"));
+    }
+
+    @Test
+    public void largeCommitsAndRetain() throws IOException {
+        File file = _dirs.file("changed-paths");
+        ChangedPaths paths = ChangedPaths.read(file);
+        ArrayList<String> many = new ArrayList<>();
+        for (int i = 0; i <= ChangedPaths.MAX_PATHS; i += 1) {
+            many.add("f" + i);
+        }
+        paths.add(Arrays.asList("a"));
+        paths.add(many);
+        paths.add(Arrays.asList("c"));
+        assertTrue(paths.mayHaveChanged(1, "not there"));
+        paths = paths.retain(new int[] {0, 2});
+        assertEquals(2, paths.size());
+        assertTrue(paths.mayHaveChanged(0, "a"));
+        assertTrue(paths.mayHaveChanged(1, "c"));
+        assertEquals(2, ChangedPaths.read(file).size());
+    }
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into chunks whose boundaries depend only on the
+ *  bytes around them, so that inserting or removing bytes in a large
+ *  file changes only the chunks near the edit, and every other chunk
+ *  keeps its id. A boundary falls after a byte where a rolling gear
+ *  hash of the bytes before it has its top 16 bits clear, which happens
+ *  about every 64 KiB; chunks are kept between 16 and 256 KiB long.
+ *  @author Simon Zhan */
+class Chunker {
+
+    /** Shortest chunk, except the last. **/
+    static final int MIN_SIZE = 1 << 14;
+    /** Longest chunk. **/
+    static final int MAX_SIZE = 1 << 18;
+    /** Bits of the hash that must be clear at a boundary. **/
+    private static final long MASK = 0xffffL << 48;
+    /** Random value added to the hash for each byte value. The seed is
+     *  fixed, so every repository cuts the same contents the same way. **/
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Stream being split. **/
+    private final InputStream _in;
+    /** Bytes read from the stream and not yet returned. **/
+    private final byte[] _buf;
+    /** Bounds of the unread bytes of _buf. **/
+    private int _start, _end;
+    /** True once the stream is used up. **/
+    private boolean _eof;
+
+    /** Constructor for a chunker splitting IN.
+     * @param in InputStream. */
+    Chunker(InputStream in) {
+        _in = in;
+        _buf = new byte[2 * MAX_SIZE];
+    }
+
+    /** Return the next chunk, or null at the end of the stream.
+     * @return byte[] return. */
+    byte[] next() throws IOException {
+        fill();
+        if (_start == _end) {
+            return null;
+        }
+        int limit = Math.min(_end, _start + MAX_SIZE);
+        int cut = limit;
+        long hash = 0;
+        for (int i = _start; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[_buf[i] & 0xff];
+            if (i + 1 - _start >= MIN_SIZE && (hash & MASK) == 0) {
+                cut = i + 1;
+                break;
+            }
+        }
+        byte[] result = Arrays.copyOfRange(_buf, _start, cut);
+        _start = cut;
+        return result;
+    }
+
+    /** Read until _buf holds at least MAX_SIZE unread bytes or the
+     *  stream ends. */
+    private void fill() throws IOException {
+        if (_end - _start >= MAX_SIZE || _eof) {
+            return;
+        }
+        System.arraycopy(_buf, _start, _buf, 0, _end - _start);
+        _end -= _start;
+        _start = 0;
+        while (_end < _buf.length) {
+            int n = _in.read(_buf, _end, _buf.length - _end);
+            if (n < 0) {
+                _eof = true;
+                break;
+            }
+            _end += n;
+        }
+    }
+}
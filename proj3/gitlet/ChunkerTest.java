@@ -0,0 +1,214 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of the Chunker class and of files stored in chunks.
+ *  @author Simon Zhan
+ */
+public class ChunkerTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return N random bytes. */
+    private static byte[] random(int n, long seed) {
+        byte[] result = new byte[n];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Return the chunks of DATA. */
+    private static List<byte[]> chunks(byte[] data) throws IOException {
+        ArrayList<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    /** Return the ids of CHUNKS. */
+    private static HashSet<String> ids(List<byte[]> chunks) {
+        HashSet<String> result = new HashSet<>();
+        for (byte[] c : chunks) {
+            result.add(Utils.sha1(c));
+        }
+        return result;
+    }
+
+    @Test
+    public void chunksCoverTheStream() throws IOException {
+        byte[] data = random(3 << 20, 1);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        List<byte[]> chunks = chunks(data);
+        for (int i = 0; i < chunks.size(); i += 1) {
+            assertTrue(chunks.get(i).length <= Chunker.MAX_SIZE);
+            assertTrue(i == chunks.size() - 1
+                       || chunks.get(i).length >= Chunker.MIN_SIZE);
+            joined.writeBytes(chunks.get(i));
+        }
+        assertArrayEquals(data, joined.toByteArray());
+        assertTrue(chunks.size() > 10);
+    }
+
+    @Test
+    public void insertionChangesFewChunks() throws IOException {
+        byte[] data = random(4 << 20, 2);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(data, 0, 2 << 20);
+        edited.writeBytes("an inserted line\n".getBytes(
+                StandardCharsets.UTF_8));
+        edited.write(data, 2 << 20, data.length - (2 << 20));
+        HashSet<String> before = ids(chunks(data));
+        HashSet<String> after = ids(chunks(edited.toByteArray()));
+        after.removeAll(before);
+        assertTrue(after.size() <= 2);
+    }
+
+    @Test
+    public void largeFilesAreStoredInChunks() throws IOException {
+        ObjectStore store = _dirs.store();
+        File dir = _dirs.dir();
+        File file = new File(dir, "big");
+        byte[] data = random(2 << 20, 3);
+        Files.write(file.toPath(), data);
+        String id = Utils.sha1(file);
+        store.putFile(id, file);
+        assertArrayEquals(data, store.read(id));
+        List<String> first = store.chunks(id);
+        assertTrue(first.size() > 1);
+
+        ByteArrayOutputStream longer = new ByteArrayOutputStream();
+        longer.writeBytes(data);
+        longer.writeBytes("one more line\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(file.toPath(), longer.toByteArray());
+        String id2 = Utils.sha1(file);
+        store.putFile(id2, file);
+        assertArrayEquals(longer.toByteArray(), store.read(id2));
+        HashSet<String> added = new HashSet<>(store.chunks(id2));
+        first.forEach(added::remove);
+        assertTrue(added.size() <= 1);
+
+        ObjectStore other = _dirs.store();
+        other.copyFrom(store, id2);
+        assertArrayEquals(longer.toByteArray(), other.read(id2));
+    }
+
+    @Test
+    public void incompressibleObjectsAreMapped() throws IOException {
+        ObjectStore store = _dirs.store();
+        byte[] data = random(100000, 4);
+        String id = Utils.sha1(data);
+        store.put(id, data);
+        assertEquals(data.length + 1, store.file(id).length());
+        ByteBuffer view = store.map(id);
+        assertTrue(view instanceof MappedByteBuffer);
+        byte[] mapped = new byte[view.remaining()];
+        view.get(mapped);
+        assertArrayEquals(data, mapped);
+
+        String text = "a line that deflates well\n".repeat(1000);
+        String textId = Utils.sha1(text);
+        store.put(textId, text);
+        assertTrue(store.file(textId).length() < text.length() / 10);
+        assertEquals(text, StandardCharsets.UTF_8.decode(
+                store.map(textId)).toString());
+    }
+
+    @Test
+    public void chunkedFilesAreTransferred() throws IOException {
+        ObjectStore store = _dirs.store();
+        File dir = _dirs.dir();
+        File file = new File(dir, "big");
+        byte[] data = random(3 << 20, 5);
+        Files.write(file.toPath(), data);
+        String id = Utils.sha1(file);
+        store.putFile(id, file);
+        File copy = new File(dir, "copy");
+        Files.write(copy.toPath(), random(5 << 20, 6));
+        store.copyTo(id, copy);
+        assertArrayEquals(data, Files.readAllBytes(copy.toPath()));
+        byte[] mapped = new byte[data.length];
+        store.map(id).get(mapped);
+        assertArrayEquals(data, mapped);
+    }
+
+    @Test
+    public void contentsLikeAChunkList() throws IOException {
+        ObjectStore store = _dirs.store();
+        String text = "gitlet chunks\nnot really a list\n";
+        String id = Utils.sha1(text);
+        store.put(id, text);
+        assertEquals(text, store.readString(id));
+        assertEquals(2, store.chunks(id).size());
+    }
+
+    @Test
+    public void gcKeepsTheChunksOfStagedFiles() throws IOException {
+        File dir = _dirs.dir();
+        Repo.save(Repo.create(dir));
+        File file = new File(_dirs.dir(), "big");
+        byte[] data = random(3 << 20, 7);
+        Files.write(file.toPath(), data);
+        String id = Utils.sha1(file);
+        new ObjectStore(new File(dir, "objects")).putFile(id, file);
+        Repo git = new Repo(dir);
+        git.staged().put("big", id);
+        git.gc(false);
+        ObjectStore store = new ObjectStore(new File(dir, "objects"));
+        assertTrue(store.chunks(id).size() > 1);
+        assertArrayEquals(data, store.read(id));
+    }
+
+    @Test
+    public void failedCopiesLeaveTheFileAlone() throws IOException {
+        ObjectStore store = _dirs.store();
+        File dir = _dirs.dir();
+        File file = new File(dir, "big");
+        Files.write(file.toPath(), random(2 << 20, 8));
+        String id = Utils.sha1(file);
+        store.putFile(id, file);
+        List<String> pieces = store.chunks(id);
+        assertTrue(store.file(pieces.get(pieces.size() / 2)).delete());
+        Files.write(file.toPath(), "edited".getBytes(StandardCharsets.UTF_8));
+        try {
+            store.copyTo(id, file);
+            fail("copied an object missing a chunk");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("edited", Utils.readContentsAsString(file));
+        }
+        assertArrayEquals(new String[] {"big"}, dir.list());
+    }
+
+    @Test
+    public void copiesKeepShortNamesAndPermissions() throws IOException {
+        ObjectStore store = _dirs.store();
+        File dir = _dirs.dir();
+        File file = new File(dir, "a");
+        Files.write(file.toPath(), random(2 << 20, 9));
+        String id = Utils.sha1(file);
+        store.putFile(id, file);
+        Files.write(file.toPath(), "edited".getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setExecutable(true));
+        store.copyTo(id, file);
+        assertEquals(id, Utils.sha1(file));
+        assertTrue(file.canExecute());
+        assertArrayEquals(new String[] {"a"}, dir.list());
+    }
+}
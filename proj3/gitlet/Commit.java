@@ -1,25 +1,44 @@
 package gitlet;
 
-import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Calendar;
 
-/** Commit class written.
+/** Commit class written. Commits are stored in a compact binary form,
+ *  written by encode and read by decode. It is the only form read:
+ *  repositories written in the older layout, with commits serialized,
+ *  are not read by this version in any case.
  * @author Simon Zhan */
-public class Commit implements Serializable {
+public class Commit {
+
+    /** First bytes of an encoded commit. **/
+    private static final int MAGIC = 0x47434d54;
+    /** Version of the encoding. **/
+    private static final int VERSION = 1;
+    /** Flag: the first parent is an id. **/
+    private static final int PARENT = 1;
+    /** Flag: there is no first parent, rather than an empty one. **/
+    private static final int NO_PARENT = 2;
+    /** Flag: the second parent is an id. **/
+    private static final int PARENT2 = 4;
+    /** Flag: the commit has a timestamp. **/
+    private static final int TIMESTAMP = 8;
+    /** Flag: the commit has a date made. **/
+    private static final int DATE = 16;
+    /** Length of a raw id in bytes. **/
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
 
     /** The Hashing code of this commit. **/
     private String _hashid;
-    /** Calender used for each commit. **/
-    private Calendar _calendar;
-    /** Formatter of the date. **/
-    private static final SimpleDateFormat FORMAT =
-            new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-    /** Hashmap to store hashing. **/
-    private HashMap<String, String> _store;
+    /** Formatter of the date. Unlike a SimpleDateFormat, it may be
+     *  shared by threads. **/
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
+    /** ID of the tree of files in this commit. **/
+    private String _tree;
     /** Timestamp on each commit. **/
     private Date _timestamp;
     /** Parent of each commit. **/
@@ -28,21 +47,19 @@ public class Commit implements Serializable {
     private Date _date;
     /** Message for each commit. **/
     private String _message;
-    /** Arraylist of children's ID. **/
-    private ArrayList<String> _child;
     /** Other oarent of each commit.**/
     private String _parent2;
+    /** Date line of this commit, once formatted. **/
+    private String _dateline;
 
     /** Initial constructor. */
     public Commit() {
-        _store = new HashMap<>();
+        _tree = Tree.emptyId();
         _parent = "";
         _message = "initial commit";
-        _calendar = Calendar.getInstance();
-        _date = _calendar.getTime();
+        _date = new Date();
         _hashid = Utils.sha1(_message);
         _timestamp = new Date(0);
-        _child = new ArrayList<>();
     }
 
 
@@ -50,42 +67,46 @@ public class Commit implements Serializable {
      * @param msg string.
      * @param date time used.
      * @param parenthashid string.
-     * @param tracking string.*/
+     * @param tree string.*/
     public Commit(String msg, String parenthashid,
-                  HashMap<String, String> tracking, Date date) {
+                  String tree, Date date) {
         _message = msg;
         _parent = parenthashid;
-        _calendar = Calendar.getInstance();
-        _date = _calendar.getTime();
+        _date = new Date();
         _timestamp = date;
-        _store = tracking;
-        _child = new ArrayList<>();
+        _tree = tree;
         _hashid = sHAvalue();
     }
 
 
+    /** Constructor for a commit being decoded, with id HASHID. It has
+     *  no fields set yet.
+     * @param hashid String. */
+    private Commit(String hashid) {
+        _hashid = hashid;
+    }
+
     /** Another constructor for Commit.
      * @param parent string.
      * @param message string.
      * @param parent2 string.
      * @param time time.
-     * @param trackedFiles Hashmap.*/
-    Commit(HashMap<String, String> trackedFiles, String parent,
+     * @param tree string.*/
+    Commit(String tree, String parent,
            String parent2, String message, Date time) {
         _parent = parent;
         _parent2 = parent2;
         _timestamp = time;
         _message = message;
-        _store = trackedFiles;
-        _child = new ArrayList<>();
+        _tree = tree;
         _hashid = sHAvalue();
     }
 
 
-    /** Returning storing content of each commit.
-     * @return _store string.*/
-    HashMap<String, String> getstore() {
-        return _store;
+    /** Returning the tree of files of each commit.
+     * @return _tree string.*/
+    String gettree() {
+        return _tree;
     }
 
     /** Returning parent id of each commit.
@@ -120,39 +141,29 @@ public class Commit implements Serializable {
         return _hashid;
     }
 
-    /** Return child.
-     * @return ArrayList return.*/
-    ArrayList getchild() {
-        return _child;
-    }
-
     /** Returning message of each commit.
      * @return String return. */
     String getmessage() {
         return _message;
     }
 
-    /** Return blob's id given by blob's name.
-     * @param name string.
-     * @return String content. */
-    String getcontent(String name) {
-        return _store.get(name);
-    }
-
-    /** Add child.
-     * @param id ID.*/
-    void addchild(String id) {
-        _child.add(id);
-    }
-
-    /** Return time.
+    /** Return time. It is formatted once per commit.
      * @return String name. */
     String gettime() {
         if (_timestamp == null) {
             return "Date: Thu Jan 1 00:00:00 1970 -0800";
         }
-        String temp = FORMAT.format(_timestamp);
-        return "Date: " + temp;
+        if (_dateline == null) {
+            _dateline = "Date: " + FORMAT.format(
+                    _timestamp.toInstant().atZone(ZoneId.systemDefault()));
+        }
+        return _dateline;
+    }
+
+    /** Return the time of this commit in milliseconds since the epoch.
+     * @return long return. */
+    long getmillis() {
+        return _timestamp == null ? 0 : _timestamp.getTime();
     }
 
     /** Boolean to judge whether this commit has parent.
@@ -161,16 +172,158 @@ public class Commit implements Serializable {
         return _message.equals("initial commit");
     }
 
-    /** Return the hashing value of the commit.
+    /** Return the hashing value of the commit: the hash of its root
+     *  tree, which covers the contents of every file in it, together
+     *  with its parents, message and time.
      * @return String hashcode. */
     String sHAvalue() {
-        String result = "";
-        StringBuilder temp = new StringBuilder();
-        for (String keyset : _store.keySet()) {
-            temp.append(keyset);
-        }
-        result = temp.toString();
-        result += _parent + _message + gettime();
-        return Utils.sha1(result);
+        return Utils.sha1("tree " + _tree + "\n",
+                "parent " + _parent + "\n",
+                _parent2 == null ? "" : "parent " + _parent2 + "\n",
+                "time " + (_timestamp == null ? 0 : _timestamp.getTime())
+                    + "\n\n", _message);
+    }
+
+    /** Return the stored form of this commit: the magic number, the
+     *  version, a byte of flags, the raw ids of its tree and parents,
+     *  its timestamp and the time it was made after it as varints, and
+     *  its message in UTF-8 after its length. Its id is not included,
+     *  being the name it is stored under.
+     * @return byte[] return. */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                64 + 3 * ID_LENGTH + _message.length());
+        int flags = (_parent == null ? NO_PARENT : 0)
+            | (_parent != null && !_parent.isEmpty() ? PARENT : 0)
+            | (_parent2 != null ? PARENT2 : 0)
+            | (_timestamp != null ? TIMESTAMP : 0)
+            | (_date != null ? DATE : 0);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(MAGIC >>> shift);
+        }
+        out.write(VERSION);
+        out.write(flags);
+        out.writeBytes(Utils.fromHex(_tree));
+        if ((flags & PARENT) != 0) {
+            out.writeBytes(Utils.fromHex(_parent));
+        }
+        if ((flags & PARENT2) != 0) {
+            out.writeBytes(Utils.fromHex(_parent2));
+        }
+        long time = getmillis();
+        if (_timestamp != null) {
+            writeVarint(out, zigzag(time));
+        }
+        if (_date != null) {
+            writeVarint(out, zigzag(_date.getTime() - time));
+        }
+        byte[] message = _message.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, message.length);
+        out.writeBytes(message);
+        return out.toByteArray();
+    }
+
+    /** Return the commit with id ID stored as BYTES. Exits if BYTES do
+     *  not hold a commit in the encoding of this version.
+     * @param id String.
+     * @param bytes byte[].
+     * @return Commit return. */
+    static Commit decode(String id, byte[] bytes) {
+        if (!isEncoded(bytes) || bytes[4] != VERSION) {
+            throw Utils.error("Unrecognized commit.");
+        }
+        Commit result = new Commit(id);
+        int flags = bytes[5];
+        int[] pos = {6};
+        result._tree = readId(bytes, pos);
+        if ((flags & PARENT) != 0) {
+            result._parent = readId(bytes, pos);
+        } else if ((flags & NO_PARENT) == 0) {
+            result._parent = "";
+        }
+        if ((flags & PARENT2) != 0) {
+            result._parent2 = readId(bytes, pos);
+        }
+        long time = 0;
+        if ((flags & TIMESTAMP) != 0) {
+            time = unzigzag(readVarint(bytes, pos));
+            result._timestamp = new Date(time);
+        }
+        if ((flags & DATE) != 0) {
+            result._date = new Date(time + unzigzag(readVarint(bytes, pos)));
+        }
+        int length = (int) readVarint(bytes, pos);
+        result._message = new String(bytes, pos[0], length,
+                StandardCharsets.UTF_8);
+        return result;
+    }
+
+    /** Return true if BYTES start as an encoded commit does.
+     * @param bytes byte[].
+     * @return boolean return. */
+    static boolean isEncoded(byte[] bytes) {
+        if (bytes.length < 6) {
+            return false;
+        }
+        int magic = 0;
+        for (int i = 0; i < 4; i += 1) {
+            magic = (magic << 8) | (bytes[i] & 0xff);
+        }
+        return magic == MAGIC;
+    }
+
+    /** Return the id held raw in BYTES at POS[0], advancing POS[0] past
+     *  it.
+     * @param bytes byte[].
+     * @param pos int[].
+     * @return String return. */
+    private static String readId(byte[] bytes, int[] pos) {
+        byte[] id = new byte[ID_LENGTH];
+        System.arraycopy(bytes, pos[0], id, 0, ID_LENGTH);
+        pos[0] += ID_LENGTH;
+        return Utils.toHex(id);
+    }
+
+    /** Write N to OUT, seven bits to a byte, low bits first.
+     * @param out ByteArrayOutputStream.
+     * @param n long. */
+    private static void writeVarint(ByteArrayOutputStream out, long n) {
+        while ((n & ~0x7fL) != 0) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /** Return the number written by writeVarint in BYTES at POS[0],
+     *  advancing POS[0] past it.
+     * @param bytes byte[].
+     * @param pos int[].
+     * @return long return. */
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = bytes[pos[0]];
+            pos[0] += 1;
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Return N mapped so that numbers near zero, of either sign, are
+     *  small.
+     * @param n long.
+     * @return long return. */
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /** Return the number mapped to N by zigzag.
+     * @param n long.
+     * @return long return. */
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
     }
 }
@@ -0,0 +1,369 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** The shape of the history: every commit in the repository with the
+ *  positions of its parents and its generation number, which is one
+ *  more than the largest generation of its parents. A commit's
+ *  ancestors all have smaller generations, which lets ancestry and
+ *  split point searches stop early.
+ *
+ *  The graph is kept in a file of fixed-size records, one per commit,
+ *  in which parents always come before their children. New commits are
+ *  appended to it.
+ *  @author Simon Zhan */
+class CommitGraph {
+
+    /** First bytes of a commit-graph file. **/
+    private static final int MAGIC = 0x43475048;
+    /** Version of the file format. **/
+    private static final int VERSION = 1;
+    /** Length of the header: magic and version. **/
+    private static final int HEADER = 2 * 4;
+    /** Length of a commit id in bytes. **/
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+    /** Position standing for a missing parent. **/
+    static final int NONE = -1;
+
+    /** Flag for commits reachable from the first commit of a search. **/
+    private static final int FROM_FIRST = 1;
+    /** Flag for commits reachable from the second commit of a search. **/
+    private static final int FROM_SECOND = 2;
+    /** Flags for commits reachable from both commits of a search. **/
+    private static final int BOTH = FROM_FIRST | FROM_SECOND;
+    /** Flag for commits below a common ancestor already found. **/
+    private static final int STALE = 4;
+
+    /** File holding the graph. **/
+    private final File _file;
+    /** Commit ids, by position. **/
+    private ArrayList<String> _ids;
+    /** Position of each commit id. **/
+    private HashMap<String, Integer> _positions;
+    /** Position of the first parent of each commit, or NONE. **/
+    private int[] _parent1;
+    /** Position of the second parent of each commit, or NONE. **/
+    private int[] _parent2;
+    /** Generation number of each commit. **/
+    private int[] _generation;
+    /** Number of commits already saved in the file. **/
+    private int _written;
+
+    /** Constructor for an empty graph kept in FILE.
+     * @param file File. */
+    private CommitGraph(File file) {
+        _file = file;
+        _ids = new ArrayList<>();
+        _positions = new HashMap<>();
+        _parent1 = new int[16];
+        _parent2 = new int[16];
+        _generation = new int[16];
+    }
+
+    /** Return the graph stored in FILE, or an empty one if FILE does not
+     *  exist.
+     * @param file File.
+     * @return CommitGraph return. */
+    static CommitGraph read(File file) {
+        return read(file, Long.MAX_VALUE);
+    }
+
+    /** Return the graph stored in the first LENGTH bytes of FILE, or an
+     *  empty one if FILE, or those bytes, are too short to hold even
+     *  the header. Commits appended after those bytes, or cut short at
+     *  their end, are left out.
+     * @param file File.
+     * @param length long.
+     * @return CommitGraph return. */
+    static CommitGraph read(File file, long length) {
+        CommitGraph graph = new CommitGraph(file);
+        if (Math.min(file.length(), length) < HEADER) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Unrecognized commit-graph file.");
+            }
+            int size = (int) ((Math.min(file.length(), length) - HEADER)
+                    / (ID_LENGTH + 3 * 4));
+            graph.ensureCapacity(size);
+            byte[] id = new byte[ID_LENGTH];
+            for (int i = 0; i < size; i += 1) {
+                in.readFully(id);
+                graph.insert(Utils.toHex(id), in.readInt(), in.readInt(),
+                        in.readInt());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        graph._written = graph.size();
+        return graph;
+    }
+
+    /** Append the commits added since the graph was read to its file,
+     *  starting it afresh if it is too short to hold the header. */
+    void write() {
+        if (_written == size()) {
+            return;
+        }
+        boolean fresh = _file.length() < HEADER;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_file, !fresh)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int i = _written; i < size(); i += 1) {
+                out.write(Utils.fromHex(_ids.get(i)));
+                out.writeInt(_parent1[i]);
+                out.writeInt(_parent2[i]);
+                out.writeInt(_generation[i]);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _written = size();
+    }
+
+    /** Rewrite the file of this graph with only the commits in KEEP,
+     *  which must include the parents of each of them, and return the
+     *  graph it then holds.
+     * @param keep Set.
+     * @return CommitGraph return. */
+    CommitGraph retain(Set<String> keep) {
+        write();
+        File tmp = new File(_file.getPath() + ".tmp");
+        boolean a = tmp.delete();
+        CommitGraph kept = new CommitGraph(tmp);
+        kept.ensureCapacity(size());
+        for (int i = 0; i < size(); i += 1) {
+            if (keep.contains(_ids.get(i))) {
+                kept.insert(_ids.get(i),
+                        _parent1[i] == NONE ? NONE
+                        : kept.position(_ids.get(_parent1[i])),
+                        _parent2[i] == NONE ? NONE
+                        : kept.position(_ids.get(_parent2[i])),
+                        _generation[i]);
+            }
+        }
+        kept.write();
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return read(_file);
+    }
+
+    /** Add the commit ID, whose parents are PARENT1 and PARENT2 (either
+     *  of which may be null or empty), unless it is already present.
+     *  Parents missing from the graph are ignored.
+     * @param id String.
+     * @param parent1 String.
+     * @param parent2 String. */
+    void add(String id, String parent1, String parent2) {
+        if (contains(id)) {
+            return;
+        }
+        int p1 = position(parent1), p2 = position(parent2);
+        int gen = 1 + Math.max(p1 == NONE ? 0 : _generation[p1],
+                               p2 == NONE ? 0 : _generation[p2]);
+        ensureCapacity(size() + 1);
+        insert(id, p1, p2, gen);
+    }
+
+    /** Record commit ID at the next position.
+     * @param id String.
+     * @param p1 int.
+     * @param p2 int.
+     * @param gen int. */
+    private void insert(String id, int p1, int p2, int gen) {
+        int pos = _ids.size();
+        _ids.add(id);
+        _positions.put(id, pos);
+        _parent1[pos] = p1;
+        _parent2[pos] = p2;
+        _generation[pos] = gen;
+    }
+
+    /** Make room for at least N commits.
+     * @param n int. */
+    private void ensureCapacity(int n) {
+        if (n > _parent1.length) {
+            int len = Math.max(n, 2 * _parent1.length);
+            _parent1 = Arrays.copyOf(_parent1, len);
+            _parent2 = Arrays.copyOf(_parent2, len);
+            _generation = Arrays.copyOf(_generation, len);
+        }
+    }
+
+    /** Return the number of commits in the graph.
+     * @return int return. */
+    int size() {
+        return _ids.size();
+    }
+
+    /** Return true if the commit ID is in the graph.
+     * @param id String.
+     * @return boolean return. */
+    boolean contains(String id) {
+        return id != null && _positions.containsKey(id);
+    }
+
+    /** Return the position of commit ID, or NONE if it is absent.
+     * @param id String.
+     * @return int return. */
+    int position(String id) {
+        Integer pos = id == null ? null : _positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /** Return the id of the commit at position POS.
+     * @param pos int.
+     * @return String return. */
+    String id(int pos) {
+        return _ids.get(pos);
+    }
+
+    /** Return the ids of all commits, parents before children.
+     * @return List return. */
+    List<String> ids() {
+        return Collections.unmodifiableList(_ids);
+    }
+
+    /** Return the generation number of the commit at position POS.
+     * @param pos int.
+     * @return int return. */
+    int generation(int pos) {
+        return _generation[pos];
+    }
+
+    /** Return the positions of the parents of the commit at POS.
+     * @param pos int.
+     * @return int[] return. */
+    int[] parents(int pos) {
+        if (_parent1[pos] == NONE) {
+            return new int[0];
+        } else if (_parent2[pos] == NONE) {
+            return new int[] { _parent1[pos] };
+        }
+        return new int[] { _parent1[pos], _parent2[pos] };
+    }
+
+    /** Return true if commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors. Only commits with generations above ANCESTOR's are
+     *  visited.
+     * @param ancestor String.
+     * @param descendant String.
+     * @return boolean return. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor), start = position(descendant);
+        if (target == NONE || start == NONE) {
+            return false;
+        }
+        int floor = _generation[target];
+        BitSet seen = new BitSet();
+        ArrayList<Integer> stack = new ArrayList<>();
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            int pos = stack.remove(stack.size() - 1);
+            if (pos == target) {
+                return true;
+            }
+            if (seen.get(pos) || _generation[pos] <= floor) {
+                continue;
+            }
+            seen.set(pos);
+            for (int parent : parents(pos)) {
+                stack.add(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Return the best common ancestor of commits FIRST and SECOND, or
+     *  null if they have none. Commits are visited in decreasing order of
+     *  generation, so the search ends as soon as every commit still to
+     *  be visited lies below a common ancestor already found. Of the
+     *  common ancestors found, the one with the largest generation is
+     *  returned.
+     * @param first String.
+     * @param second String.
+     * @return String return. */
+    String mergeBase(String first, String second) {
+        int a = position(first), b = position(second);
+        if (a == NONE || b == NONE) {
+            return null;
+        }
+        if (a == b) {
+            return first;
+        }
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+            _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Integer.compare(y, x));
+        HashSet<Integer> queued = new HashSet<>();
+        flags.put(a, FROM_FIRST);
+        flags.put(b, FROM_SECOND);
+        queue.add(a);
+        queue.add(b);
+        queued.add(a);
+        queued.add(b);
+        int best = NONE;
+        int active = 2;
+        while (active > 0) {
+            int pos = queue.poll();
+            queued.remove(pos);
+            int flag = flags.get(pos);
+            if ((flag & STALE) != 0) {
+                continue;
+            }
+            active -= 1;
+            if ((flag & BOTH) == BOTH) {
+                if (best == NONE || _generation[pos] > _generation[best]) {
+                    best = pos;
+                }
+                flag |= STALE;
+            }
+            for (int parent : parents(pos)) {
+                int old = flags.getOrDefault(parent, 0);
+                int now = old | flag;
+                if (now == old) {
+                    continue;
+                }
+                flags.put(parent, now);
+                if (queued.add(parent)) {
+                    queue.add(parent);
+                    if ((now & STALE) == 0) {
+                        active += 1;
+                    }
+                } else if ((old & STALE) == 0 && (now & STALE) != 0) {
+                    active -= 1;
+                }
+            }
+        }
+        return best == NONE ? null : _ids.get(best);
+    }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+
+/** Tests of the CommitGraph class.
+ *  @author Simon Zhan
+ */
+public class CommitGraphTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return the id standing for the commit named NAME. */
+    private static String id(String name) {
+        return Utils.sha1(name);
+    }
+
+    /** Return a new empty graph kept in a fresh temporary file. */
+    private CommitGraph emptyGraph() throws IOException {
+        return CommitGraph.read(_dirs.file("commit-graph"));
+    }
+
+    /** Add commit NAME with parents P1 and P2 to GRAPH. */
+    private static void add(CommitGraph graph, String name,
+                            String p1, String p2) {
+        graph.add(id(name), p1 == null ? null : id(p1),
+                  p2 == null ? null : id(p2));
+    }
+
+    /** Return a graph in which two branches split at b and were merged
+     *  into m on the first one, after which both went on:
+     *  a - b - c - e - m - g
+     *       \       /
+     *        d --- f - h        */
+    private CommitGraph mergedGraph() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "a", null, null);
+        add(graph, "b", "a", null);
+        add(graph, "c", "b", null);
+        add(graph, "d", "b", null);
+        add(graph, "e", "c", null);
+        add(graph, "f", "d", null);
+        add(graph, "m", "e", "f");
+        add(graph, "g", "m", null);
+        add(graph, "h", "f", null);
+        return graph;
+    }
+
+    @Test
+    public void generations() throws IOException {
+        CommitGraph graph = mergedGraph();
+        assertEquals(1, graph.generation(graph.position(id("a"))));
+        assertEquals(4, graph.generation(graph.position(id("e"))));
+        assertEquals(5, graph.generation(graph.position(id("m"))));
+    }
+
+    @Test
+    public void mergeBase() throws IOException {
+        CommitGraph graph = mergedGraph();
+        assertEquals(id("b"), graph.mergeBase(id("e"), id("f")));
+        assertEquals(id("f"), graph.mergeBase(id("g"), id("h")));
+        assertEquals(id("f"), graph.mergeBase(id("h"), id("g")));
+        assertEquals(id("c"), graph.mergeBase(id("c"), id("g")));
+        assertEquals(id("g"), graph.mergeBase(id("g"), id("g")));
+    }
+
+    @Test
+    public void ancestry() throws IOException {
+        CommitGraph graph = mergedGraph();
+        assertTrue(graph.isAncestor(id("d"), id("g")));
+        assertTrue(graph.isAncestor(id("a"), id("h")));
+        assertTrue(graph.isAncestor(id("h"), id("h")));
+        assertFalse(graph.isAncestor(id("e"), id("h")));
+        assertFalse(graph.isAncestor(id("g"), id("a")));
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        File file = _dirs.file("commit-graph");
+        CommitGraph graph = CommitGraph.read(file);
+        add(graph, "a", null, null);
+        add(graph, "b", "a", null);
+        graph.write();
+        graph = CommitGraph.read(file);
+        add(graph, "c", "a", null);
+        add(graph, "d", "b", "c");
+        graph.write();
+        graph = CommitGraph.read(file);
+        assertEquals(4, graph.size());
+        assertEquals(id("d"), graph.ids().get(3));
+        assertEquals(3, graph.generation(graph.position(id("d"))));
+        assertEquals(id("a"), graph.mergeBase(id("b"), id("c")));
+    }
+
+    @Test
+    public void retain() throws IOException {
+        CommitGraph graph = mergedGraph();
+        HashSet<String> keep = new HashSet<>();
+        for (String name : new String[] {"a", "b", "d", "f", "h"}) {
+            keep.add(id(name));
+        }
+        CommitGraph kept = graph.retain(keep);
+        assertEquals(5, kept.size());
+        assertFalse(kept.contains(id("m")));
+        assertEquals(4, kept.generation(kept.position(id("f"))));
+        assertTrue(kept.isAncestor(id("b"), id("h")));
+        assertEquals(id("b"), kept.mergeBase(id("h"), id("b")));
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+/** Tests of the stored form of commits.
+ *  @author Simon Zhan
+ */
+public class CommitTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Check that A and B are the same commit.
+     * @param a Commit.
+     * @param b Commit. */
+    private static void assertSameCommit(Commit a, Commit b) {
+        assertEquals(a.gethashid(), b.gethashid());
+        assertEquals(a.gettree(), b.gettree());
+        assertEquals(a.getparent(), b.getparent());
+        assertEquals(a.getparent2(), b.getparent2());
+        assertEquals(a.getmessage(), b.getmessage());
+        assertEquals(a.getmillis(), b.getmillis());
+        assertEquals(a.gettime(), b.gettime());
+        assertEquals(a.getParents(), b.getParents());
+        assertEquals(a.sHAvalue(), b.sHAvalue());
+    }
+
+    @Test
+    public void initialCommitRoundTrips() {
+        Commit initial = new Commit();
+        byte[] bytes = initial.encode();
+        assertTrue(Commit.isEncoded(bytes));
+        assertSameCommit(initial,
+                Commit.decode(initial.gethashid(), bytes));
+    }
+
+    @Test
+    public void mergeCommitRoundTrips() {
+        Commit a = new Commit("first", Utils.sha1("p"), Tree.emptyId(),
+                new Date(1234567890123L));
+        Commit b = new Commit(Utils.sha1("t"), a.gethashid(),
+                Utils.sha1("q"), "Merged \u00e9t\u00e9 into master.",
+                new Date(-5));
+        Commit c = new Commit(Utils.sha1("t"), null, null, "", null);
+        for (Commit commit : new Commit[] {a, b, c}) {
+            byte[] bytes = commit.encode();
+            assertSameCommit(commit,
+                    Commit.decode(commit.gethashid(), bytes));
+            assertTrue(bytes.length < 100);
+        }
+    }
+
+    @Test
+    public void unencodedCommitsAreRejected() throws IOException {
+        Commit commit = new Commit("old", Utils.sha1("p"), Tree.emptyId(),
+                new Date(99));
+        byte[] bytes = commit.encode();
+        bytes[4] += 1;
+        for (byte[] stored : new byte[][] {bytes, {(byte) 0xac, (byte) 0xed,
+                                                   0, 5, 0, 0, 0}}) {
+            ObjectStore store = _dirs.store();
+            store.put(commit.gethashid(), stored);
+            try {
+                store.getCommit(commit.gethashid());
+                fail("read a commit that is not encoded");
+            } catch (GitletException excp) {
+                assertEquals("Unrecognized commit.", excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** A long-running server for the repository in the current directory,
+ *  and the client that hands commands to it. The server listens on a
+ *  Unix-domain socket in .gitlet and runs one command at a time, in
+ *  its own process, keeping the commits and trees it has read between
+ *  commands. A client sends the arguments of its command; the server
+ *  replies with the exit status and everything the command printed.
+ *  @author Simon Zhan */
+class Daemon {
+
+    /** Name of the socket, inside .gitlet. **/
+    private static final String SOCKET = "daemon.sock";
+
+    /** Return the socket of the daemon for the current directory.
+     * @return UnixDomainSocketAddress return. */
+    private static UnixDomainSocketAddress address() {
+        return UnixDomainSocketAddress.of(
+                Utils.join(".gitlet", SOCKET).toPath());
+    }
+
+    /** Run the command ARGS in the daemon serving the current
+     *  directory, copying what it prints to this process's output.
+     *  Return its exit status, or -1 if no daemon is running.
+     * @param args String[].
+     * @return int return. */
+    static int forward(String[] args) throws IOException {
+        if (!Utils.join(".gitlet", SOCKET).exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(address());
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(channel));
+            int status = in.readInt();
+            System.out.write(in.readNBytes(in.readInt()));
+            System.out.flush();
+            System.err.write(in.readNBytes(in.readInt()));
+            System.err.flush();
+            return status;
+        }
+    }
+
+    /** Serve commands for the current directory until a client asks
+     *  the daemon to stop. */
+    static void serve() throws IOException {
+        if (forward(new String[] {"daemon", "running"}) >= 0) {
+            System.out.println("A gitlet daemon is already running.");
+            throw new GitletException();
+        }
+        File socket = Utils.join(".gitlet", SOCKET);
+        Files.deleteIfExists(socket.toPath());
+        Repo.keepWarm();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address());
+            socket.deleteOnExit();
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket.toPath());
+        }
+    }
+
+    /** Run the command sent by CLIENT and send back its results.
+     *  Return false if the daemon should stop.
+     * @param client SocketChannel.
+     * @return boolean return. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("stop");
+        boolean query = args.length == 2 && args[0].equals("daemon")
+            && args[1].equals("running");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = 0;
+        if (!stop && !query) {
+            PrintStream stdout = System.out, stderr = System.err;
+            System.setOut(new PrintStream(output, true));
+            System.setErr(new PrintStream(errors, true));
+            try {
+                Main.run(args);
+            } catch (GitletException excp) {
+                status = 0;
+            } catch (IOException | RuntimeException excp) {
+                excp.printStackTrace();
+                status = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+        }
+        DataOutputStream out = new DataOutputStream(
+                Channels.newOutputStream(client));
+        out.writeInt(status);
+        out.writeInt(output.size());
+        output.writeTo(out);
+        out.writeInt(errors.size());
+        errors.writeTo(out);
+        out.flush();
+        return !stop;
+    }
+}
@@ -0,0 +1,517 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs and three-way merges of texts. Lines are compared as
+ *  numbers standing for their contents, after the lines shared at the
+ *  start and end are set aside. What remains is diffed with Myers'
+ *  O(ND) algorithm while the number of differences is small; past
+ *  that, a histogram diff splits the texts around their rarest shared
+ *  line and diffs the pieces, so large files with many changes still
+ *  take about linear time.
+ *  @author Simon Zhan */
+class Diff {
+
+    /** Most differences Myers' algorithm looks for in one region before
+     *  it is split instead. **/
+    private static final int MAX_COST = 256;
+    /** Lines occurring more often than this in a region are not used to
+     *  split it. **/
+    private static final int MAX_CHAIN = 64;
+    /** Lines of context around each hunk of a unified diff. **/
+    private static final int CONTEXT = 3;
+
+    /** A run of lines from AStart to AEnd of the first text replaced by
+     *  those from BStart to BEnd of the second. Either may be empty. */
+    static class Edit {
+        /** Bounds of the lines of the first text. **/
+        private final int _aStart, _aEnd;
+        /** Bounds of the lines of the second text. **/
+        private final int _bStart, _bEnd;
+
+        /** Constructor for the edit replacing lines ASTART to AEND with
+         *  lines BSTART to BEND.
+         * @param aStart int.
+         * @param aEnd int.
+         * @param bStart int.
+         * @param bEnd int. */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+
+        /** Return the first line of the first text. **/
+        int aStart() {
+            return _aStart;
+        }
+
+        /** Return the line after the last of the first text. **/
+        int aEnd() {
+            return _aEnd;
+        }
+
+        /** Return the first line of the second text. **/
+        int bStart() {
+            return _bStart;
+        }
+
+        /** Return the line after the last of the second text. **/
+        int bEnd() {
+            return _bEnd;
+        }
+    }
+
+    /** Return the lines of TEXT, each with its line terminator. The last
+     *  has none if TEXT does not end with one.
+     * @param text String.
+     * @return List return. */
+    static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '\n') {
+                result.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Return the lines of the UTF-8 text in BYTES, from its position
+     *  to its limit, as lines does. Each line is decoded on its own, so
+     *  a mapped text is never copied whole onto the heap.
+     * @param bytes ByteBuffer.
+     * @return List return. */
+    static List<String> lines(ByteBuffer bytes) {
+        ArrayList<String> result = new ArrayList<>();
+        byte[] line = new byte[256];
+        int start = bytes.position(), end = bytes.limit();
+        for (int i = start; i < end; i += 1) {
+            if (bytes.get(i) == '\n' || i == end - 1) {
+                int length = i + 1 - start;
+                if (length > line.length) {
+                    line = new byte[Math.max(length, 2 * line.length)];
+                }
+                bytes.get(start, line, 0, length);
+                result.add(new String(line, 0, length,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the edits turning A into B, in order.
+     * @param a List.
+     * @param b List.
+     * @return List return. */
+    static List<Edit> diff(List<String> a, List<String> b) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        int[] x = number(a, numbers), y = number(b, numbers);
+        return new Diff(x, y).edits();
+    }
+
+    /** Return the number of each line of TEXT, adding new lines to
+     *  NUMBERS.
+     * @param text List.
+     * @param numbers HashMap.
+     * @return int[] return. */
+    private static int[] number(List<String> text,
+                                HashMap<String, Integer> numbers) {
+        int[] result = new int[text.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = numbers.computeIfAbsent(text.get(i),
+                    k -> numbers.size());
+        }
+        return result;
+    }
+
+    /** Numbered lines of the two texts. **/
+    private final int[] _a, _b;
+    /** Line of B matched with each line of A, or -1. **/
+    private final int[] _matchA;
+    /** Line of A matched with each line of B, or -1. **/
+    private final int[] _matchB;
+
+    /** Constructor for the diff of A and B, which it computes.
+     * @param a int[].
+     * @param b int[]. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _matchA = new int[a.length];
+        _matchB = new int[b.length];
+        Arrays.fill(_matchA, -1);
+        Arrays.fill(_matchB, -1);
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {0, a.length, 0, b.length});
+        while (!regions.isEmpty()) {
+            int[] r = regions.pop();
+            split(r[0], r[1], r[2], r[3], regions);
+        }
+    }
+
+    /** Record that line I of A matches line J of B.
+     * @param i int.
+     * @param j int. */
+    private void match(int i, int j) {
+        _matchA[i] = j;
+        _matchB[j] = i;
+    }
+
+    /** Match the lines of A from ALO to AHI with those of B from BLO to
+     *  BHI, or push the pieces still to be matched onto REGIONS.
+     * @param aLo int.
+     * @param aHi int.
+     * @param bLo int.
+     * @param bHi int.
+     * @param regions ArrayDeque. */
+    private void split(int aLo, int aHi, int bLo, int bHi,
+                       ArrayDeque<int[]> regions) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            match(aLo, bLo);
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            match(aHi, bHi);
+        }
+        if (aLo == aHi || bLo == bHi || myers(aLo, aHi, bLo, bHi)) {
+            return;
+        }
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            counts.merge(_a[i], 1, Integer::sum);
+        }
+        HashMap<Integer, ArrayList<Integer>> where = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            if (counts.get(_a[i]) <= MAX_CHAIN) {
+                where.computeIfAbsent(_a[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+        int bestCount = MAX_CHAIN + 1, bestLength = 0, bestI = 0, bestJ = 0;
+        for (int j = bLo; j < bHi;) {
+            ArrayList<Integer> places = where.get(_b[j]);
+            if (places == null || places.size() > bestCount) {
+                j += 1;
+                continue;
+            }
+            int next = j + 1;
+            for (int i : places) {
+                int s = 0, e = 1;
+                while (i - s > aLo && j - s > bLo
+                       && _a[i - s - 1] == _b[j - s - 1]) {
+                    s += 1;
+                }
+                while (i + e < aHi && j + e < bHi
+                       && _a[i + e] == _b[j + e]) {
+                    e += 1;
+                }
+                if (places.size() < bestCount
+                    || (places.size() == bestCount && s + e > bestLength)) {
+                    bestCount = places.size();
+                    bestLength = s + e;
+                    bestI = i - s;
+                    bestJ = j - s;
+                }
+                next = Math.max(next, j + e);
+            }
+            j = next;
+        }
+        if (bestLength == 0) {
+            return;
+        }
+        for (int k = 0; k < bestLength; k += 1) {
+            match(bestI + k, bestJ + k);
+        }
+        regions.push(new int[] {bestI + bestLength, aHi,
+                                bestJ + bestLength, bHi});
+        regions.push(new int[] {aLo, bestI, bLo, bestJ});
+    }
+
+    /** Match the lines of A from ALO to AHI with those of B from BLO to
+     *  BHI by Myers' algorithm, giving up and returning false if they
+     *  differ in more than MAX_COST lines.
+     * @param aLo int.
+     * @param aHi int.
+     * @param bLo int.
+     * @param bHi int.
+     * @return boolean return. */
+    private boolean myers(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int max = Math.min(n + m, MAX_COST);
+        int off = max + 1;
+        int[] v = new int[2 * max + 3];
+        ArrayList<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d += 1) {
+            trace.add(Arrays.copyOfRange(v, off - d - 1, off + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[off + k - 1] < v[off + k + 1])
+                    ? v[off + k + 1] : v[off + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[off + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, n, m, aLo, bLo);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Match the lines along the path found by Myers' algorithm, whose
+     *  state before each step is in TRACE, ending at N and M lines past
+     *  ALO and BLO.
+     * @param trace List.
+     * @param n int.
+     * @param m int.
+     * @param aLo int.
+     * @param bLo int. */
+    private void backtrack(List<int[]> trace, int n, int m,
+                           int aLo, int bLo) {
+        int x = n, y = m;
+        for (int d = trace.size() - 1; d > 0; d -= 1) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prev = k == -d || (k != d && v[k + d] < v[k + d + 2])
+                ? k + 1 : k - 1;
+            int px = v[prev + d + 1], py = px - prev;
+            int start = prev == k - 1 ? px + 1 : px;
+            while (x > start) {
+                x -= 1;
+                y -= 1;
+                match(aLo + x, bLo + y);
+            }
+            x = px;
+            y = py;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            match(aLo + x, bLo + y);
+        }
+    }
+
+    /** Return the edits between the matched lines, in order.
+     * @return List return. */
+    private List<Edit> edits() {
+        ArrayList<Edit> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (i < _a.length && j < _b.length && _matchA[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < _a.length && _matchA[i] < 0) {
+                i += 1;
+            }
+            while (j < _b.length && _matchB[j] < 0) {
+                j += 1;
+            }
+            result.add(new Edit(i0, i, j0, j));
+        }
+        return result;
+    }
+
+    /** Print to OUT the hunks of the unified diff of A and B, whose edits
+     *  are EDITS, with a few lines of context around each.
+     * @param out PrintWriter.
+     * @param a List.
+     * @param b List.
+     * @param edits List. */
+    static void unified(PrintWriter out, List<String> a, List<String> b,
+                        List<Edit> edits) {
+        for (int h = 0; h < edits.size();) {
+            int last = h;
+            while (last + 1 < edits.size()
+                   && edits.get(last + 1).aStart() - edits.get(last).aEnd()
+                   <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Edit first = edits.get(h), end = edits.get(last);
+            int aLo = Math.max(0, first.aStart() - CONTEXT);
+            int bLo = first.bStart() - (first.aStart() - aLo);
+            int aHi = Math.min(a.size(), end.aEnd() + CONTEXT);
+            int bHi = end.bEnd() + (aHi - end.aEnd());
+            out.print("@@ -" + range(aLo, aHi) + " +" + range(bLo, bHi)
+                      + " @@\n");
+            int i = aLo;
+            for (int e = h; e <= last; e += 1) {
+                Edit edit = edits.get(e);
+                for (; i < edit.aStart(); i += 1) {
+                    line(out, ' ', a.get(i));
+                }
+                for (; i < edit.aEnd(); i += 1) {
+                    line(out, '-', a.get(i));
+                }
+                for (int j = edit.bStart(); j < edit.bEnd(); j += 1) {
+                    line(out, '+', b.get(j));
+                }
+            }
+            for (; i < aHi; i += 1) {
+                line(out, ' ', a.get(i));
+            }
+            h = last + 1;
+        }
+    }
+
+    /** Return the range of lines from LO to HI as a unified diff hunk
+     *  header shows it.
+     * @param lo int.
+     * @param hi int.
+     * @return String return. */
+    private static String range(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(lo + 1);
+        }
+        return (hi == lo ? lo : lo + 1) + "," + (hi - lo);
+    }
+
+    /** Print LINE to OUT after the character KIND, noting if it has no
+     *  line terminator.
+     * @param out PrintWriter.
+     * @param kind char.
+     * @param line String. */
+    private static void line(PrintWriter out, char kind, String line) {
+        out.print(kind);
+        out.print(line);
+        if (!line.endsWith("\n")) {
+            out.print("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** The outcome of a three-way merge. */
+    static class Merged {
+        /** Merged text, with conflict markers around conflicts. **/
+        private final String _text;
+        /** True if some change conflicted. **/
+        private final boolean _conflicted;
+
+        /** Constructor for the merged text TEXT, which has conflicts if
+         *  CONFLICTED.
+         * @param text String.
+         * @param conflicted boolean. */
+        Merged(String text, boolean conflicted) {
+            _text = text;
+            _conflicted = conflicted;
+        }
+
+        /** Return the merged text. **/
+        String text() {
+            return _text;
+        }
+
+        /** Return true if some change conflicted. **/
+        boolean conflicted() {
+            return _conflicted;
+        }
+    }
+
+    /** Return the merge of the changes from BASE to OURS with those from
+     *  BASE to THEIRS. Changes that overlap or touch conflict, unless
+     *  they are the same; a conflict shows both versions of the lines it
+     *  covers, ours first, between markers.
+     * @param base String.
+     * @param ours String.
+     * @param theirs String.
+     * @return Merged return. */
+    static Merged merge(String base, String ours, String theirs) {
+        List<String> o = lines(base), a = lines(ours), b = lines(theirs);
+        List<Edit> ea = diff(o, a), eb = diff(o, b);
+        StringBuilder result = new StringBuilder();
+        boolean conflicted = false;
+        int pos = 0, ia = 0, ib = 0, da = 0, db = 0;
+        while (ia < ea.size() || ib < eb.size()) {
+            boolean fromA = ib == eb.size() || (ia < ea.size()
+                && ea.get(ia).aStart() <= eb.get(ib).aStart());
+            int lo = fromA ? ea.get(ia).aStart() : eb.get(ib).aStart();
+            int hi = lo, ja = ia, jb = ib;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (ja < ea.size() && ea.get(ja).aStart() <= hi) {
+                    hi = Math.max(hi, ea.get(ja).aEnd());
+                    ja += 1;
+                    grew = true;
+                }
+                if (jb < eb.size() && eb.get(jb).aStart() <= hi) {
+                    hi = Math.max(hi, eb.get(jb).aEnd());
+                    jb += 1;
+                    grew = true;
+                }
+            }
+            for (; pos < lo; pos += 1) {
+                result.append(o.get(pos));
+            }
+            int na = delta(ea, ia, ja), nb = delta(eb, ib, jb);
+            String sa = join(a, lo + da, hi + da + na);
+            String sb = join(b, lo + db, hi + db + nb);
+            if (ja == ia) {
+                result.append(sb);
+            } else if (jb == ib || sa.equals(sb)) {
+                result.append(sa);
+            } else {
+                conflicted = true;
+                result.append("<<<<<<< HEAD\n").append(sa).append("=======\n")
+                    .append(sb).append(">>>>>>>\n");
+            }
+            pos = hi;
+            da += na;
+            db += nb;
+            ia = ja;
+            ib = jb;
+        }
+        for (; pos < o.size(); pos += 1) {
+            result.append(o.get(pos));
+        }
+        return new Merged(result.toString(), conflicted);
+    }
+
+    /** Return how many more lines the edits of EDITS from FROM to TO
+     *  put in than they take out.
+     * @param edits List.
+     * @param from int.
+     * @param to int.
+     * @return int return. */
+    private static int delta(List<Edit> edits, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i += 1) {
+            Edit e = edits.get(i);
+            result += (e.bEnd() - e.bStart()) - (e.aEnd() - e.aStart());
+        }
+        return result;
+    }
+
+    /** Return the lines of TEXT from LO to HI, joined.
+     * @param text List.
+     * @param lo int.
+     * @param hi int.
+     * @return String return. */
+    private static String join(List<String> text, int lo, int hi) {
+        StringBuilder result = new StringBuilder();
+        for (int i = lo; i < hi; i += 1) {
+            result.append(text.get(i));
+        }
+        return result.toString();
+    }
+}
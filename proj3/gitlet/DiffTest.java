@@ -0,0 +1,138 @@
+package gitlet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Tests of the Diff class.
+ *  @author Simon Zhan
+ */
+public class DiffTest {
+
+    /** Return the text of the lines LINES, each ended by a newline. */
+    private static String text(String... lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return A with EDITS applied, checking that they leave out no line
+     *  of B. */
+    private static List<String> apply(List<String> a, List<String> b,
+                                      List<Diff.Edit> edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int i = 0;
+        for (Diff.Edit e : edits) {
+            result.addAll(a.subList(i, e.aStart()));
+            assertEquals(result.size(), e.bStart());
+            result.addAll(b.subList(e.bStart(), e.bEnd()));
+            i = e.aEnd();
+        }
+        result.addAll(a.subList(i, a.size()));
+        return result;
+    }
+
+    /** Return N random lines drawn from K different ones. */
+    private static List<String> random(Random r, int n, int k) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add("line " + r.nextInt(k) + "\n");
+        }
+        return result;
+    }
+
+    @Test
+    public void smallDiff() {
+        List<String> a = Diff.lines(text("a", "b", "c", "d"));
+        List<String> b = Diff.lines(text("a", "c", "d", "e"));
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        assertEquals(2, edits.size());
+        assertEquals(1, edits.get(0).aStart());
+        assertEquals(2, edits.get(0).aEnd());
+        assertEquals(4, edits.get(1).aStart());
+        assertEquals(3, edits.get(1).bStart());
+        assertEquals(4, edits.get(1).bEnd());
+        StringWriter out = new StringWriter();
+        Diff.unified(new PrintWriter(out), a, b, edits);
+        assertEquals("@@ -1,4 +1,4 @@\n a\n-b\n c\n d\n+e\n", out.toString());
+    }
+
+    @Test
+    public void linesOfBytes() {
+        String[] texts = {"", "a\n", "a\nb", "\n\nna\u00efve\n",
+                          "x".repeat(1000) + "\ny"};
+        for (String t : texts) {
+            byte[] bytes = t.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(bytes.length + 4);
+            buf.put(2, bytes);
+            assertEquals(Diff.lines(t),
+                    Diff.lines(buf.slice(2, bytes.length)));
+        }
+    }
+
+    @Test
+    public void randomDiffsReproduceTheirTarget() {
+        Random r = new Random(61);
+        for (int t = 0; t < 200; t += 1) {
+            List<String> a = random(r, r.nextInt(60), 1 + r.nextInt(8));
+            List<String> b = random(r, r.nextInt(60), 1 + r.nextInt(8));
+            assertEquals(b, apply(a, b, Diff.diff(a, b)));
+        }
+    }
+
+    @Test
+    public void largeDiffs() {
+        Random r = new Random(7);
+        ArrayList<String> a = new ArrayList<>();
+        for (int i = 0; i < 200000; i += 1) {
+            a.add("unique line " + i + "\n");
+        }
+        ArrayList<String> b = new ArrayList<>(a);
+        for (int i = 0; i < 5000; i += 1) {
+            b.set(r.nextInt(b.size()), "changed " + i + "\n");
+        }
+        long start = System.currentTimeMillis();
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(b, apply(a, b, edits));
+        int changed = 0;
+        for (Diff.Edit e : edits) {
+            changed += e.aEnd() - e.aStart();
+        }
+        assertTrue(changed <= 5000);
+    }
+
+    @Test
+    public void cleanMerge() {
+        Diff.Merged m = Diff.merge(text("a", "b", "c", "d", "e"),
+                                   text("A", "b", "c", "d", "e"),
+                                   text("a", "b", "c", "d", "E", "f"));
+        assertFalse(m.conflicted());
+        assertEquals(text("A", "b", "c", "d", "E", "f"), m.text());
+        m = Diff.merge(text("a", "b"), text("a", "x", "b"),
+                       text("a", "x", "b"));
+        assertFalse(m.conflicted());
+        assertEquals(text("a", "x", "b"), m.text());
+    }
+
+    @Test
+    public void conflictingMerge() {
+        Diff.Merged m = Diff.merge(text("a", "b", "c", "d", "e"),
+                                   text("a", "B", "c", "d", "E"),
+                                   text("a", "b2", "c", "d", "e"));
+        assertTrue(m.conflicted());
+        assertEquals(text("a", "<<<<<<< HEAD", "B", "=======", "b2",
+                          ">>>>>>>", "c", "d", "E"), m.text());
+        m = Diff.merge(text("x"), text("y"), text("z"));
+        assertEquals("<<<<<<< HEAD\ny\n=======\nz\n>>>>>>>\n", m.text());
+    }
+}
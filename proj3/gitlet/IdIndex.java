@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/** A sorted index of all commit ids, used to find the commits whose ids
+ *  start with an abbreviation. The file holds a header, the ids known
+ *  when it was last rebuilt in sorted order, and then the ids of later
+ *  commits in the order they were added. Lookups binary search the
+ *  sorted part and scan the short unsorted tail, which is merged into
+ *  the sorted part once it grows past TAIL_LIMIT ids.
+ *  @author Simon Zhan */
+class IdIndex {
+
+    /** First bytes of an id index file. **/
+    private static final int MAGIC = 0x47494458;
+    /** Version of the file format. **/
+    private static final int VERSION = 1;
+    /** Length of the header: magic, version and number of sorted ids. **/
+    private static final int HEADER = 3 * 4;
+    /** Length of a commit id in bytes. **/
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+    /** Largest number of unsorted ids kept before the file is rebuilt. **/
+    private static final int TAIL_LIMIT = 256;
+
+    /** File holding the index. **/
+    private final File _file;
+
+    /** Constructor for the index kept in FILE.
+     * @param file File. */
+    IdIndex(File file) {
+        _file = file;
+    }
+
+    /** Return the ids in this index that start with PREFIX, at most
+     *  LIMIT of them.
+     * @param prefix String.
+     * @param limit int.
+     * @return List return. */
+    List<String> lookup(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!_file.exists() || prefix.isEmpty()
+                || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]+")) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            int sorted = sortedCount(buf);
+            int total = (int) ((channel.size() - HEADER) / ID_LENGTH);
+            byte[] low = Utils.fromHex(pad(prefix));
+            byte[] entry = new byte[ID_LENGTH];
+            int lo = 0, hi = sorted;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(buf, mid, low) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < sorted && result.size() < limit; i += 1) {
+                String id = idAt(buf, i, entry);
+                if (!id.startsWith(prefix)) {
+                    break;
+                }
+                result.add(id);
+            }
+            for (int i = sorted; i < total && result.size() < limit;
+                 i += 1) {
+                String id = idAt(buf, i, entry);
+                if (id.startsWith(prefix)) {
+                    result.add(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return true if the file of this index exists.
+     * @return boolean return. */
+    boolean exists() {
+        return _file.exists();
+    }
+
+    /** Add IDS, none of which may already be present, to this index.
+     * @param ids Collection. */
+    void add(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!_file.exists()) {
+            rebuild(ids);
+            return;
+        }
+        int sorted, total;
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            channel.read(header, 0);
+            sorted = sortedCount(header);
+            total = (int) ((channel.size() - HEADER) / ID_LENGTH);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (total - sorted + ids.size() > TAIL_LIMIT) {
+            rebuild(ids);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_file, true)))) {
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrite the file with just IDS.
+     * @param ids Collection. */
+    void replace(Collection<String> ids) {
+        writeSorted(ids.toArray(new String[0]));
+    }
+
+    /** Rewrite the file with every id in it, together with EXTRA, in
+     *  sorted order.
+     * @param extra Collection. */
+    private void rebuild(Collection<String> extra) {
+        byte[] old = _file.exists() ? Utils.readContents(_file)
+            : new byte[HEADER];
+        int count = (old.length - HEADER) / ID_LENGTH;
+        String[] ids = new String[count + extra.size()];
+        byte[] entry = new byte[ID_LENGTH];
+        ByteBuffer buf = ByteBuffer.wrap(old);
+        for (int i = 0; i < count; i += 1) {
+            ids[i] = idAt(buf, i, entry);
+        }
+        int k = count;
+        for (String id : extra) {
+            ids[k] = id;
+            k += 1;
+        }
+        writeSorted(ids);
+    }
+
+    /** Rewrite the file with IDS, in sorted order.
+     * @param ids String[]. */
+    private void writeSorted(String[] ids) {
+        Arrays.sort(ids);
+        File tmp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.length);
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the number of sorted ids recorded in the header in BUF.
+     * @param buf ByteBuffer.
+     * @return int return. */
+    private static int sortedCount(ByteBuffer buf) {
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw Utils.error("Unrecognized commit id index.");
+        }
+        return buf.getInt(8);
+    }
+
+    /** Return the id at position I of BUF, using ENTRY as scratch space.
+     * @param buf ByteBuffer.
+     * @param i int.
+     * @param entry byte[].
+     * @return String return. */
+    private static String idAt(ByteBuffer buf, int i, byte[] entry) {
+        buf.get(HEADER + i * ID_LENGTH, entry);
+        return Utils.toHex(entry);
+    }
+
+    /** Compare the id at position I of BUF with KEY, as unsigned bytes.
+     * @param buf ByteBuffer.
+     * @param i int.
+     * @param key byte[].
+     * @return int return. */
+    private static int compare(ByteBuffer buf, int i, byte[] key) {
+        int off = HEADER + i * ID_LENGTH;
+        for (int k = 0; k < ID_LENGTH; k += 1) {
+            int c = Integer.compare(buf.get(off + k) & 0xff, key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return PREFIX padded with zeros to the length of a full id.
+     * @param prefix String.
+     * @return String return. */
+    private static String pad(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < Utils.UID_LENGTH) {
+            result.append('0');
+        }
+        return result.toString();
+    }
+}
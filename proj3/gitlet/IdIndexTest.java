@@ -0,0 +1,57 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Tests of the IdIndex class.
+ *  @author Simon Zhan
+ */
+public class IdIndexTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return a new index kept in a fresh temporary file. */
+    private IdIndex emptyIndex() throws IOException {
+        return new IdIndex(_dirs.file("commit-index"));
+    }
+
+    @Test
+    public void findsUniquePrefixes() throws IOException {
+        IdIndex index = emptyIndex();
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 1) {
+            ids.add(Utils.sha1("commit " + i));
+        }
+        for (int i = 0; i < ids.size(); i += 100) {
+            index.add(ids.subList(i, i + 100));
+        }
+        for (String id : ids) {
+            assertEquals(Arrays.asList(id), index.lookup(id, 2));
+            assertTrue(index.lookup(id.substring(0, 3), 1000).contains(id));
+        }
+        assertTrue(index.lookup("", 2).isEmpty());
+    }
+
+    @Test
+    public void reportsAmbiguity() throws IOException {
+        IdIndex index = emptyIndex();
+        String a = "abc" + Utils.sha1("a").substring(3);
+        String b = "abd" + Utils.sha1("b").substring(3);
+        index.add(Arrays.asList(a));
+        index.add(Arrays.asList(b));
+        List<String> found = index.lookup("ab", 2);
+        assertEquals(2, found.size());
+        assertEquals(Arrays.asList(a), index.lookup("abc", 2));
+        assertEquals(Arrays.asList(b), index.lookup("abd", 2));
+        assertEquals(0, index.lookup("abe", 2).size());
+        assertEquals(0, index.lookup("xyz", 2).size());
+    }
+}
@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** The staging area: files staged for addition and for removal.
+ *  Kept in its own small file so that commands do not need to load
+ *  the rest of the repository to read or change it.
+ *
+ *  Alongside the staged files the index keeps the id of the tree they
+ *  make when applied to the head commit's tree. It is brought up to
+ *  date path by path as files are staged, so that committing does not
+ *  need to look at the whole staging area.
+ *
+ *  The index also caches, for each working file that has been hashed,
+ *  its size, modification time and inode together with the id of its
+ *  contents. A file whose stat fields have not changed since is not
+ *  read again. Stat fields recorded too soon after the file was last
+ *  modified cannot vouch for it; such files are hashed again when the
+ *  index is next written, once enough time has passed.
+ *  @author Simon Zhan */
+class Index implements Serializable {
+
+    /** Version of stored staging areas, fixed so that index files
+     *  written before it was declared can still be read. **/
+    private static final long serialVersionUID = -7143690479385654551L;
+
+    /** Link between stage file's name and its blob id. **/
+    private HashMap<String, String> _staging;
+    /** Names of the files staged for removal. **/
+    private HashSet<String> _toremove;
+    /** Last known stat fields and content id of each working file. **/
+    private HashMap<String, Stat> _stats;
+    /** ID of the tree the staged tree was built on, or null. **/
+    private String _base;
+    /** ID of the tree _base with the staged files applied. **/
+    private String _tree;
+
+    /** Files modified this many milliseconds or less before they were
+     *  hashed are hashed again, since a later change within the same
+     *  tick of the file system's clock would not show in their
+     *  modification time. **/
+    private static final long RACY_WINDOW = 2000;
+
+    /** Constructor for an empty staging area. */
+    Index() {
+        _staging = new HashMap<>();
+        _toremove = new HashSet<>();
+        _stats = new HashMap<>();
+    }
+
+    /** Return the staging area stored in FILE, or an empty one if
+     *  FILE does not exist.
+     * @param file File.
+     * @return Index return. */
+    static Index read(File file) {
+        if (!file.exists()) {
+            return new Index();
+        }
+        return Utils.readObject(file, Index.class);
+    }
+
+    /** Return the staging area whose file holds CONTENTS.
+     * @param contents byte[].
+     * @return Index return. */
+    static Index parse(byte[] contents) {
+        return Utils.deserialize(contents, Index.class);
+    }
+
+    /** Save this staging area to FILE when JOURNAL commits.
+     * @param file File.
+     * @param journal Journal. */
+    void write(File file, Journal journal) {
+        journal.replace(file, Utils.serialize(this));
+    }
+
+    /** Return the files staged for addition.
+     * @return HashMap return. */
+    HashMap<String, String> staged() {
+        return _staging;
+    }
+
+    /** Return the files staged for removal.
+     * @return HashSet return. */
+    HashSet<String> removed() {
+        return _toremove;
+    }
+
+    /** Return the id of the tree BASE with the staged files applied,
+     *  or null if it is not known.
+     * @param base String.
+     * @return String return. */
+    String tree(String base) {
+        return base.equals(_base) ? _tree : null;
+    }
+
+    /** Record that the tree BASE with the staged files applied is TREE.
+     * @param base String.
+     * @param tree String. */
+    void setTree(String base, String tree) {
+        _base = base;
+        _tree = tree;
+    }
+
+    /** Unstage every file. **/
+    void clear() {
+        _staging.clear();
+        _toremove.clear();
+        _base = _tree = null;
+    }
+
+    /** Return the id of the contents of the working file NAME, whose
+     *  current attributes are ATTRS, if it is known not to have changed
+     *  since it was last hashed. Otherwise return null.
+     * @param name String.
+     * @param attrs BasicFileAttributes.
+     * @return String return. */
+    String cachedHash(String name, BasicFileAttributes attrs) {
+        Stat stat = _stats.get(name);
+        if (stat == null || !stat.matches(attrs)) {
+            return null;
+        }
+        return stat._hash;
+    }
+
+    /** Record that the working file NAME, whose attributes were ATTRS,
+     *  has contents with id HASH.
+     * @param name String.
+     * @param attrs BasicFileAttributes.
+     * @param hash String. */
+    void record(String name, BasicFileAttributes attrs, String hash) {
+        _stats.put(name, new Stat(attrs, hash));
+    }
+
+    /** Hash again each working file whose stat fields were recorded
+     *  too soon after it was modified to be trusted, if that is now
+     *  long enough ago, so that the new stat fields can vouch for it.
+     *  Files that can no longer be read are forgotten. */
+    void refresh() {
+        long settled = System.currentTimeMillis() - RACY_WINDOW;
+        for (Map.Entry<String, Stat> e : new HashMap<>(_stats).entrySet()) {
+            Stat stat = e.getValue();
+            if (!stat.racy() || stat.modified() >= settled) {
+                continue;
+            }
+            File file = new File(e.getKey());
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        file.toPath(), BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    _stats.remove(e.getKey());
+                    continue;
+                }
+                _stats.put(e.getKey(), new Stat(attrs, Utils.sha1(file)));
+            } catch (IOException | IllegalArgumentException excp) {
+                _stats.remove(e.getKey());
+            }
+        }
+    }
+
+    /** Forget what is known about the working file NAME.
+     * @param name String. */
+    void forget(String name) {
+        _stats.remove(name);
+    }
+
+    /** The stat fields of a working file when it was last hashed. */
+    private static class Stat implements Serializable {
+
+        /** Version of stored stat fields, fixed so that index files
+         *  written before it was declared can still be read. **/
+        private static final long serialVersionUID = -7740274760351310689L;
+
+        /** Size of the file. **/
+        private long _size;
+        /** Modification time of the file, in nanoseconds. **/
+        private long _mtime;
+        /** Device and inode of the file, or null if not available. **/
+        private String _inode;
+        /** Time the file was hashed, in milliseconds. **/
+        private long _hashed;
+        /** ID of the contents of the file. **/
+        private String _hash;
+
+        /** Constructor for the stat fields ATTRS of a file with contents
+         *  HASH.
+         * @param attrs BasicFileAttributes.
+         * @param hash String. */
+        Stat(BasicFileAttributes attrs, String hash) {
+            _size = attrs.size();
+            _mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            _inode = attrs.fileKey() == null
+                ? null : attrs.fileKey().toString();
+            _hashed = System.currentTimeMillis();
+            _hash = hash;
+        }
+
+        /** Return true if a file with attributes ATTRS can be assumed
+         *  to still have the contents recorded here.
+         * @param attrs BasicFileAttributes.
+         * @return boolean return. */
+        boolean matches(BasicFileAttributes attrs) {
+            String inode = attrs.fileKey() == null
+                ? null : attrs.fileKey().toString();
+            return _size == attrs.size()
+                && _mtime == attrs.lastModifiedTime().
+                       to(TimeUnit.NANOSECONDS)
+                && (_inode == null ? inode == null : _inode.equals(inode))
+                && !racy();
+        }
+
+        /** Return the modification time of the file, in milliseconds.
+         * @return long return. */
+        long modified() {
+            return TimeUnit.NANOSECONDS.toMillis(_mtime);
+        }
+
+        /** Return true if the file was hashed too soon after it was
+         *  modified for these fields to vouch for its contents.
+         * @return boolean return. */
+        boolean racy() {
+            return modified() >= _hashed - RACY_WINDOW;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/** Tests of the stat fields cached in the Index class.
+ *  @author Simon Zhan
+ */
+public class IndexTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return the attributes of FILE, after setting its modification
+     *  time to AGO milliseconds in the past.
+     * @param file File.
+     * @param ago long.
+     * @return BasicFileAttributes return. */
+    private static BasicFileAttributes age(File file, long ago)
+        throws IOException {
+        Files.setLastModifiedTime(file.toPath(),
+                FileTime.fromMillis(System.currentTimeMillis() - ago));
+        return Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class);
+    }
+
+    /** Return the current attributes of FILE.
+     * @param file File.
+     * @return BasicFileAttributes return. */
+    private static BasicFileAttributes attrs(File file) throws IOException {
+        return Files.readAttributes(file.toPath(),
+                BasicFileAttributes.class);
+    }
+
+    @Test
+    public void settledFilesAreTrusted() throws IOException {
+        File file = _dirs.file("a.txt");
+        Utils.writeContents(file, "hello");
+        Index index = new Index();
+        String id = Utils.sha1(file);
+        index.record(file.getPath(), age(file, 5000), id);
+        assertEquals(id, index.cachedHash(file.getPath(), attrs(file)));
+        Utils.writeContents(file, "world");
+        assertNull(index.cachedHash(file.getPath(), attrs(file)));
+    }
+
+    @Test
+    public void racyFilesAreTrustedOnceHashedAgain() throws Exception {
+        File file = _dirs.file("a.txt");
+        Utils.writeContents(file, "hello");
+        Index index = new Index();
+        String id = Utils.sha1(file);
+        index.record(file.getPath(), age(file, 1500), id);
+        assertNull(index.cachedHash(file.getPath(), attrs(file)));
+        index.refresh();
+        assertNull(index.cachedHash(file.getPath(), attrs(file)));
+        Thread.sleep(700);
+        index.refresh();
+        assertEquals(id, index.cachedHash(file.getPath(), attrs(file)));
+    }
+
+    @Test
+    public void refreshSeesChangesTheClockHid() throws Exception {
+        File file = _dirs.file("a.txt");
+        Utils.writeContents(file, "hello");
+        FileTime tick = age(file, 1500).lastModifiedTime();
+        Index index = new Index();
+        index.record(file.getPath(), attrs(file), Utils.sha1(file));
+        Utils.writeContents(file, "world");
+        Files.setLastModifiedTime(file.toPath(), tick);
+        Thread.sleep(700);
+        index.refresh();
+        assertEquals(Utils.sha1(file),
+                index.cachedHash(file.getPath(), attrs(file)));
+    }
+}
@@ -0,0 +1,412 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** The journal of a command that changes the repository, which lets a
+ *  command cut short by a crash be rolled back or finished by the next
+ *  one. A command begins its journal before touching any metadata,
+ *  recording the length of the commit graph and the state of the
+ *  indexes derived from it. It then appends to those files. The new
+ *  contents of the small files that name the state of the repository,
+ *  its branches, HEAD, the staging area and the remotes, are added to
+ *  the journal rather than written in place. The small objects the
+ *  command saved are by then in one pack, already synced. Committing
+ *  the journal syncs the few other files written so far, the commit
+ *  graph, its derived indexes and any large objects, and then the
+ *  journal; from then on, the command counts as done. The small files
+ *  are then replaced, each by renaming a temporary file over it, and
+ *  the journal is deleted.
+ *
+ *  On recovery, a committed journal is replayed. One that was never
+ *  committed is undone: the commit graph is cut back to its old length
+ *  and the derived indexes that changed are deleted, to be rebuilt
+ *  from the graph when next needed. Objects written by the command are
+ *  harmless, as nothing names them, and are left to gc.
+ *  @author Simon Zhan */
+class Journal {
+
+    /** First bytes of a journal. **/
+    private static final int MAGIC = 0x4a524e4c;
+    /** Mark of a record replacing a file. **/
+    private static final int REPLACE = 1;
+    /** Mark of a record deleting a file. **/
+    private static final int DELETE = 2;
+    /** Mark ending the records of a committed journal. **/
+    private static final int COMMIT = 3;
+    /** Name of the journal file. **/
+    static final String NAME = "journal";
+    /** Name of the commit graph, which commands only append to, except
+     *  gc, which only shrinks it. **/
+    private static final String GRAPH = "commit-graph";
+    /** Names of the files derived from the commit graph, which can be
+     *  rebuilt from it. **/
+    private static final String[] DERIVED = {
+        "commit-index", "message-index", "changed-paths"
+    };
+
+    /** Most files synced at once. **/
+    private static final int SYNC_WORKERS = 16;
+
+    /** Directory of the repository. **/
+    private final File _dir;
+    /** File of the journal. **/
+    private final File _file;
+    /** New contents of the files to replace, or null for files to
+     *  delete, by file. **/
+    private final LinkedHashMap<File, byte[]> _changes;
+    /** Files written by the command, to be synced when it commits. **/
+    private final LinkedHashSet<File> _written;
+    /** Lock of the repository, held by the command, or null. **/
+    private final RepoLock _lock;
+    /** Length of the commit graph when the journal began, as read back
+     *  from its file. **/
+    private long _graphLength;
+    /** Lengths, or -1 if missing, and modification times of the derived
+     *  files when the journal began, as read back from its file. **/
+    private long[] _lengths, _times;
+    /** True if the journal read back from its file was committed. **/
+    private boolean _committed;
+
+    /** Constructor for the journal of the repository in DIR, whose
+     *  command holds LOCK, if not null. Nothing is written until it
+     *  begins.
+     * @param dir File.
+     * @param lock RepoLock. */
+    Journal(File dir, RepoLock lock) {
+        _dir = dir;
+        _file = new File(dir, NAME);
+        _changes = new LinkedHashMap<>();
+        _written = new LinkedHashSet<>();
+        _lock = lock;
+    }
+
+    /** Start the journal, recording the state of the commit graph and
+     *  of the files derived from it. */
+    void begin() {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(new File(_dir, GRAPH).length());
+            for (String name : DERIVED) {
+                File f = new File(_dir, name);
+                out.writeLong(f.exists() ? f.length() : -1);
+                out.writeLong(f.lastModified());
+            }
+            out.flush();
+            sync(_file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        syncDirectory(_dir);
+    }
+
+    /** Note that the command wrote FILES, which must be synced before it
+     *  commits.
+     * @param files Collection. */
+    void written(Collection<File> files) {
+        _written.addAll(files);
+    }
+
+    /** Note that the command wrote FILE, if it exists.
+     * @param file File. */
+    void written(File file) {
+        if (file.exists()) {
+            _written.add(file);
+        }
+    }
+
+    /** Replace FILE with CONTENTS when the command commits.
+     * @param file File.
+     * @param contents byte[]. */
+    void replace(File file, byte[] contents) {
+        _changes.put(file, contents);
+    }
+
+    /** Delete FILE when the command commits.
+     * @param file File. */
+    void delete(File file) {
+        _changes.put(file, null);
+    }
+
+    /** Commit the command: sync everything it wrote and the journal,
+     *  holding the new contents of the files to replace, then replace
+     *  them and drop the journal. */
+    void commit() {
+        syncAll(_written);
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (File f : _written) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_file, true)))) {
+            for (Map.Entry<File, byte[]> e : _changes.entrySet()) {
+                out.writeInt(e.getValue() == null ? DELETE : REPLACE);
+                out.writeUTF(relative(e.getKey()));
+                if (e.getValue() != null) {
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            out.writeInt(COMMIT);
+            out.writeInt(MAGIC);
+            out.flush();
+            sync(_file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_lock != null) {
+            _lock.advance();
+        }
+        apply(_dir, _changes);
+        boolean a = _file.delete();
+    }
+
+    /** Force the contents of FILES to disk. These are the commit graph,
+     *  its derived indexes and the large objects of the command, whose
+     *  small ones were packed and synced together; Java offers no way to
+     *  sync many files in one call, so they are synced by a pool of
+     *  workers, letting the system overlap their flushes.
+     * @param files Collection. */
+    private static void syncAll(Collection<File> files) {
+        if (files.size() <= 1) {
+            for (File f : files) {
+                sync(f);
+            }
+            return;
+        }
+        int workers = Math.min(files.size(), SYNC_WORKERS);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            ArrayList<Future<?>> results = new ArrayList<>();
+            for (File f : files) {
+                results.add(pool.submit(() -> sync(f)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the path of FILE relative to the repository.
+     * @param file File.
+     * @return String return. */
+    private String relative(File file) {
+        return _dir.getAbsoluteFile().toPath()
+            .relativize(file.getAbsoluteFile().toPath()).toString();
+    }
+
+    /** Replace or delete the files in CHANGES, then sync the directories
+     *  holding them, and DIR.
+     * @param dir File.
+     * @param changes Map. */
+    private static void apply(File dir, Map<File, byte[]> changes) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, byte[]> e : changes.entrySet()) {
+            File f = e.getKey();
+            dirs.add(f.getAbsoluteFile().getParentFile());
+            if (e.getValue() == null) {
+                boolean a = f.delete();
+                continue;
+            }
+            boolean a = f.getParentFile().mkdirs();
+            File tmp = new File(dir, NAME + ".tmp");
+            Utils.writeContents(tmp, e.getValue());
+            try {
+                Files.move(tmp.toPath(), f.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (File d : dirs) {
+            syncDirectory(d);
+        }
+        syncDirectory(dir);
+    }
+
+    /** Return the journal left in DIR, or null if there is none or it
+     *  was cut short before its header was complete. Only reads files,
+     *  so a command that does not hold the lock may call it.
+     * @param dir File.
+     * @return Journal return. */
+    static Journal read(File dir) {
+        Journal result = new Journal(dir, null);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(result._file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            result._graphLength = in.readLong();
+            result._lengths = new long[DERIVED.length];
+            result._times = new long[DERIVED.length];
+            for (int i = 0; i < DERIVED.length; i += 1) {
+                result._lengths[i] = in.readLong();
+                result._times[i] = in.readLong();
+            }
+            try {
+                for (int kind = in.readInt(); kind != COMMIT;
+                     kind = in.readInt()) {
+                    File f = new File(dir, in.readUTF());
+                    if (kind == REPLACE) {
+                        byte[] contents = new byte[in.readInt()];
+                        in.readFully(contents);
+                        result._changes.put(f, contents);
+                    } else if (kind == DELETE) {
+                        result._changes.put(f, null);
+                    } else {
+                        throw new EOFException();
+                    }
+                }
+                result._committed = in.readInt() == MAGIC;
+            } catch (EOFException excp) {
+                result._committed = false;
+            }
+        } catch (FileNotFoundException | EOFException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!result._committed) {
+            result._changes.clear();
+        }
+        return result;
+    }
+
+    /** Return true if this journal, read back from its file, was
+     *  committed, so that its changes stand.
+     * @return boolean return. */
+    boolean committed() {
+        return _committed;
+    }
+
+    /** Return the length of the commit graph when this journal, read
+     *  back from its file, began.
+     * @return long return. */
+    long graphLength() {
+        return _graphLength;
+    }
+
+    /** Return the new contents of the files this journal, read back
+     *  from its file, replaces, or null for the files it deletes, by
+     *  file. Empty unless it was committed.
+     * @return Map return. */
+    Map<File, byte[]> changes() {
+        return Collections.unmodifiableMap(_changes);
+    }
+
+    /** Finish or undo the command whose journal is left in DIR, if any,
+     *  while holding LOCK. Return true if there was one.
+     * @param dir File.
+     * @param lock RepoLock.
+     * @return boolean return. */
+    static boolean recover(File dir, RepoLock lock) {
+        File file = new File(dir, NAME);
+        if (!file.exists()) {
+            return false;
+        }
+        Journal journal = read(dir);
+        if (journal != null && journal._committed) {
+            if (lock != null) {
+                lock.advance();
+            }
+            apply(dir, journal._changes);
+        } else if (journal != null) {
+            undo(dir, journal._graphLength, journal._lengths,
+                 journal._times);
+        }
+        boolean a = file.delete();
+        return true;
+    }
+
+    /** Undo a command that never committed in DIR. If the commit graph
+     *  grew past GRAPHLENGTH bytes, it is cut back, or deleted if it did
+     *  not exist before, and each derived index whose length and
+     *  modification time are no longer those in LENGTHS and TIMES is
+     *  deleted. If it shrank, gc had rewritten it,
+     *  leaving only unreachable commits out, so it is kept and all the
+     *  derived indexes are deleted.
+     * @param dir File.
+     * @param graphLength long.
+     * @param lengths long[].
+     * @param times long[]. */
+    private static void undo(File dir, long graphLength, long[] lengths,
+                             long[] times) {
+        File graph = new File(dir, GRAPH);
+        boolean shrank = graph.length() < graphLength;
+        if (graphLength == 0) {
+            boolean a = graph.delete();
+        } else if (graph.length() > graphLength) {
+            try (RandomAccessFile f = new RandomAccessFile(graph, "rw")) {
+                f.setLength(graphLength);
+                f.getFD().sync();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (int i = 0; i < DERIVED.length; i += 1) {
+            File f = new File(dir, DERIVED[i]);
+            long length = f.exists() ? f.length() : -1;
+            if (shrank || length != lengths[i]
+                || f.lastModified() != times[i]) {
+                boolean a = f.delete();
+            }
+        }
+        syncDirectory(dir);
+    }
+
+    /** Force the contents of FILE to disk.
+     * @param file File. */
+    static void sync(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Force the entries of the directory DIR to disk, where the system
+     *  allows it.
+     * @param dir File. */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** Tests of the Journal class.
+ *  @author Simon Zhan
+ */
+public class JournalTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return the bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void committedChangesAreApplied() throws IOException {
+        File dir = _dirs.dir();
+        File head = new File(dir, "HEAD");
+        File gone = new File(dir, "gone");
+        Utils.writeContents(head, "master");
+        Utils.writeContents(gone, "x");
+        Journal journal = new Journal(dir, null);
+        journal.begin();
+        assertTrue(new File(dir, Journal.NAME).exists());
+        journal.replace(head, bytes("other"));
+        journal.replace(Utils.join(dir, "refs", "other"), bytes("abc"));
+        journal.delete(gone);
+        journal.commit();
+        assertEquals("other", Utils.readContentsAsString(head));
+        assertEquals("abc", Utils.readContentsAsString(
+                Utils.join(dir, "refs", "other")));
+        assertFalse(gone.exists());
+        assertFalse(new File(dir, Journal.NAME).exists());
+        assertFalse(Journal.recover(dir, null));
+    }
+
+    @Test
+    public void unfinishedCommandsAreUndone() throws IOException {
+        File dir = _dirs.dir();
+        File graph = new File(dir, "commit-graph");
+        File ids = new File(dir, "commit-index");
+        File messages = new File(dir, "message-index");
+        File head = new File(dir, "HEAD");
+        Utils.writeContents(graph, "0123456789");
+        Utils.writeContents(ids, "ids");
+        Utils.writeContents(messages, "messages");
+        Utils.writeContents(head, "master");
+        Journal journal = new Journal(dir, null);
+        journal.begin();
+        Utils.writeContents(graph, "0123456789more");
+        Utils.writeContents(messages, "messages, rebuilt");
+        journal.replace(head, bytes("other"));
+        assertTrue(Journal.recover(dir, null));
+        assertEquals("0123456789", Utils.readContentsAsString(graph));
+        assertTrue(ids.exists());
+        assertFalse(messages.exists());
+        assertEquals("master", Utils.readContentsAsString(head));
+        assertFalse(new File(dir, Journal.NAME).exists());
+    }
+
+    @Test
+    public void graphOfAnUnfinishedInitIsRemoved() throws IOException {
+        File dir = _dirs.dir();
+        File graph = new File(dir, "commit-graph");
+        Journal journal = new Journal(dir, null);
+        journal.begin();
+        CommitGraph started = CommitGraph.read(graph);
+        started.add(Utils.sha1("initial commit"), null, null);
+        started.write();
+        assertTrue(Journal.recover(dir, null));
+        assertFalse(graph.exists());
+        assertEquals(0, CommitGraph.read(graph).size());
+        Utils.writeContents(graph, "");
+        CommitGraph empty = CommitGraph.read(graph);
+        assertEquals(0, empty.size());
+        empty.add(Utils.sha1("initial commit"), null, null);
+        empty.write();
+        assertEquals(1, CommitGraph.read(graph).size());
+    }
+
+    @Test
+    public void committedJournalIsReplayed() throws IOException {
+        File dir = _dirs.dir();
+        File blocker = new File(dir, "refs");
+        Utils.writeContents(blocker, "not a directory");
+        Journal journal = new Journal(dir, null);
+        journal.begin();
+        journal.replace(new File(dir, "HEAD"), bytes("other"));
+        journal.replace(Utils.join(dir, "refs", "other"), bytes("abc"));
+        try {
+            journal.commit();
+            fail("expected the branch to be unwritable");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(new File(dir, Journal.NAME).exists());
+        }
+        assertTrue(blocker.delete());
+        assertTrue(Journal.recover(dir, null));
+        assertEquals("other", Utils.readContentsAsString(
+                new File(dir, "HEAD")));
+        assertEquals("abc", Utils.readContentsAsString(
+                Utils.join(dir, "refs", "other")));
+    }
+
+    @Test
+    public void readersSeeOnlyCommittedChanges() throws IOException {
+        File dir = _dirs.dir();
+        File graph = new File(dir, "commit-graph");
+        File head = new File(dir, "HEAD");
+        Utils.writeContents(graph, "0123456789");
+        Utils.writeContents(head, "master");
+        Journal journal = new Journal(dir, null);
+        journal.begin();
+        Utils.writeContents(graph, "0123456789more");
+        journal.replace(head, bytes("other"));
+        Journal pending = Journal.read(dir);
+        assertFalse(pending.committed());
+        assertEquals(10, pending.graphLength());
+        assertTrue(pending.changes().isEmpty());
+
+        Utils.writeContents(Utils.join(dir, "refs"), "not a directory");
+        journal.replace(Utils.join(dir, "refs", "other"), bytes("abc"));
+        try {
+            journal.commit();
+            fail("expected the branch to be unwritable");
+        } catch (IllegalArgumentException excp) {
+            pending = Journal.read(dir);
+        }
+        assertTrue(pending.committed());
+        assertArrayEquals(bytes("abc"),
+                pending.changes().get(Utils.join(dir, "refs", "other")));
+        assertEquals(2, pending.changes().size());
+        assertTrue(Utils.join(dir, "refs").delete());
+        assertTrue(Journal.recover(dir, null));
+        assertNull(Journal.read(dir));
+    }
+
+    @Test
+    public void tornJournalIsDropped() throws IOException {
+        File dir = _dirs.dir();
+        Utils.writeContents(new File(dir, Journal.NAME), new byte[] {0x4a});
+        assertTrue(Journal.recover(dir, null));
+        assertFalse(new File(dir, Journal.NAME).exists());
+    }
+}
@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 /**
@@ -12,17 +13,52 @@ import java.io.IOException;
 public class Main {
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
-     * <COMMAND> <OPERAND> ....
+     * <COMMAND> <OPERAND> .... If a daemon is serving the repository
+     * in the current directory, the command is run there instead.
      */
     public static void main(String... args) throws IOException {
+        if (!(args.length == 1 && args[0].equals("daemon"))) {
+            int status = Daemon.forward(args);
+            if (status >= 0) {
+                System.exit(status);
+            }
+        }
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.exit(0);
+        }
+    }
+
+    /** Run the command ARGS. A command that stops early throws a
+     *  GitletException, printing its message first if it has one, so
+     *  that nothing it changed is saved. Either way, the locks it took
+     *  are released.
+     * @param args String[]. */
+    static void run(String... args) throws IOException {
+        try {
+            dispatch(args);
+        } catch (GitletException excp) {
+            if (excp.getMessage() != null) {
+                System.out.println(excp.getMessage());
+            }
+            throw excp;
+        } finally {
+            RepoLock.release();
+        }
+    }
+
+    /** Carry out the command ARGS.
+     * @param args String[]. */
+    private static void dispatch(String... args) throws IOException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (args[0].equals("init")) {
             if (args.length > 1) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException();
             }
             File directory = new File(".gitlet");
             if (directory.isDirectory() && directory.exists()) {
@@ -30,8 +66,7 @@ public class Main {
                         + "system already exists"
                         + " in the current directory.");
             } else {
-                directory.mkdir();
-                Repo git = new Repo();
+                Repo git = Repo.create(directory);
                 Repo.save(git);
             }
         } else if (args[0].equals("add")) {
@@ -42,6 +77,8 @@ public class Main {
             log(args);
         } else if (args[0].equals("global-log")) {
             globallog(args);
+        } else if (args[0].equals("diff")) {
+            diff(args);
         } else if (args[0].equals("find")) {
             find(args);
         } else if (args[0].equals("checkout")) {
@@ -68,22 +105,79 @@ public class Main {
             addremote(args);
         } else if (args[0].equals("rm-remote")) {
             rmRemote(args);
+        } else if (args[0].equals("repack")) {
+            repack(args);
+        } else if (args[0].equals("gc")) {
+            gc(args);
+        } else if (args[0].equals("daemon")) {
+            daemon(args);
         } else {
             System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw new GitletException();
         }
     }
 
+    /** repack method.
+     * @param args file. */
+    static void repack(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        if (!isInitialize()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        }
+        Repo git = Repo.read();
+        git.repack();
+        Repo.save(git);
+    }
+
+    /** gc method.
+     * @param args file. */
+    static void gc(String[] args) {
+        if (args.length > 2
+                || args.length == 2 && !args[1].equals("--repack")) {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        if (!isInitialize()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        }
+        Repo git = Repo.read();
+        git.gc(args.length == 2);
+        Repo.save(git);
+    }
+
+    /** daemon method: serve commands in this directory until stopped.
+     * @param args file. */
+    static void daemon(String[] args) throws IOException {
+        if (args.length == 2 && args[1].equals("stop")) {
+            System.out.println("No gitlet daemon is running.");
+            throw new GitletException();
+        }
+        if (args.length != 1) {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        if (!isInitialize()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        }
+        Daemon.serve();
+    }
+
     /** rm-remote method.
      * @param args file. */
     static void rmRemote(String[] args) throws IOException {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException();
         }
         String remotename = args[1];
         Repo git = Repo.read();
@@ -96,11 +190,11 @@ public class Main {
     static void addremote(String[] args) throws IOException {
         if (args.length != 3) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException();
         }
         String remotename = args[1];
         String dir = args[2];
@@ -114,11 +208,11 @@ public class Main {
     static void push(String[] args) throws IOException {
         if (args.length != 3) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException();
         }
         String remotename = args[1];
         String remotebranch = args[2];
@@ -132,11 +226,11 @@ public class Main {
     static void fetch(String[] args) throws IOException {
         if (args.length != 3) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException();
         }
         String remotename = args[1];
         String remotebranch = args[2];
@@ -150,11 +244,11 @@ public class Main {
     static void pull(String[] args) throws IOException {
         if (args.length != 3) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
         if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException();
         }
         String remotename = args[1];
         String remotebranch = args[2];
@@ -168,7 +262,7 @@ public class Main {
     static void merge(String[] args) throws IOException {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -184,7 +278,7 @@ public class Main {
     static void reset(String[] args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -200,7 +294,7 @@ public class Main {
     static void rmbranch(String[] args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -216,7 +310,7 @@ public class Main {
     static void rm(String[] args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -232,7 +326,7 @@ public class Main {
     static void branch(String[] args) {
         if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -250,13 +344,12 @@ public class Main {
     static void status(String[] args) {
         if (args.length > 1) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
-            Repo git = Repo.read();
+            Repo git = Repo.snapshot();
             git.status();
-            Repo.save(git);
         }
     }
 
@@ -271,7 +364,7 @@ public class Main {
             String temp2 = args[2];
             if (!temp1.equals("--")) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException();
             }
             Repo git = Repo.read();
             git.checkoutfile(temp2);
@@ -282,7 +375,7 @@ public class Main {
             String filename = args[3];
             if (!temp2.equals("--")) {
                 System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw new GitletException();
             }
             Repo git = Repo.read();
             git.checkoutID(commitid, filename);
@@ -294,53 +387,105 @@ public class Main {
             Repo.save(git);
         } else {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         }
     }
 
-    /** find method implimentation.
+    /** find method implimentation. With --word, finds the commits
+     *  whose messages contain a word, and with --prefix, a word
+     *  starting with the operand.
      * @param args file. */
     static void find(String[] args) {
-        if (args.length != 2) {
+        boolean word = args.length == 3
+            && (args[1].equals("--word") || args[1].equals("--prefix"));
+        if (args.length != 2 && !word) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
-            Repo git = Repo.read();
-            String op = args[1];
-            git.find(op);
-            Repo.save(git);
+            Repo git = Repo.snapshot();
+            String op = args[args.length - 1];
+            git.find(op, word, word && args[1].equals("--prefix"));
+        }
+    }
+
+    /** Return the options of log or global-log in ARGS: the number of
+     *  commits to skip, given by --skip, the most to show, given by -n,
+     *  and 1 if --compact asks for one line per commit. Return null if
+     *  ARGS are not valid.
+     * @param args String[].
+     * @return int[] return. */
+    private static int[] logOptions(String[] args) {
+        int[] result = {0, Integer.MAX_VALUE, 0};
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--compact")) {
+                result[2] = 1;
+                continue;
+            }
+            int which = args[i].equals("--skip") ? 0
+                : args[i].equals("-n") ? 1 : -1;
+            if (which < 0 || i + 1 == args.length) {
+                return null;
+            }
+            try {
+                result[which] = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+            if (result[which] < 0) {
+                return null;
+            }
+            i += 1;
+        }
+        return result;
+    }
+
+    /** diff method implimentation.
+     * @param args file. */
+    static void diff(String[] args) {
+        if (!isInitialize()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+        } else {
+            Repo git = Repo.snapshot();
+            git.diff(Arrays.copyOfRange(args, 1, args.length));
         }
     }
 
     /** global log method implimentation.
      * @param args file. */
     static void globallog(String[] args) {
-        if (args.length > 1) {
+        int[] options = logOptions(args);
+        if (options == null) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
-            Repo git = Repo.read();
-            git.globalLog();
-            Repo.save(git);
+            Repo git = Repo.snapshot();
+            git.globalLog(options[0], options[1], options[2] == 1);
         }
     }
 
-    /** log method implimentation.
+    /** log method implimentation. Options may be followed by -- and
+     *  a path, to show only the commits that changed it.
      * @param args file. */
     static void log(String[] args) {
-        if (args.length > 1) {
+        int dash = Arrays.asList(args).indexOf("--");
+        String path = null;
+        if (dash >= 0 && dash == args.length - 2) {
+            path = args[dash + 1].replaceAll("^(\\./)+|/+$", "");
+        }
+        int[] options = dash >= 0 && (path == null || path.isEmpty()) ? null
+            : logOptions(dash < 0 ? args : Arrays.copyOf(args, dash));
+        if (options == null) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
-            Repo git = Repo.read();
-            git.log();
-            Repo.save(git);
+            Repo git = Repo.snapshot();
+            git.log(options[0], options[1], options[2] == 1, path);
         }
     }
 
@@ -351,7 +496,7 @@ public class Main {
             System.out.println("Please enter a commit messages.");
         } else if (args.length != 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
@@ -365,15 +510,14 @@ public class Main {
     /** add method implimentation.
      * @param args file. */
     static void add(String[] args) throws IOException {
-        if (args.length != 2) {
+        if (args.length < 2) {
             System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException();
         } else if (!isInitialize()) {
             System.out.println("Not in an initialized Gitlet directory.");
         } else {
             Repo git = Repo.read();
-            String filename = args[1];
-            git.add(filename);
+            git.add(Arrays.copyOfRange(args, 1, args.length));
             Repo.save(git);
         }
     }
@@ -0,0 +1,433 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** An index of the messages of all commits, used by find. It answers
+ *  three kinds of query: the commits with a given message, found
+ *  through a hash table; and the commits whose messages contain a given
+ *  word, or a word starting with a given prefix, found by binary search
+ *  in a sorted list of words. Commits are always listed in the order in
+ *  which they were added to the repository.
+ *
+ *  The file holds a header; the ids of the commits indexed when it was
+ *  last rebuilt; a hash of each one's message; the hash table, as the
+ *  start of each bucket followed by the positions of the commits in
+ *  each bucket; the sorted words, as their starting offsets followed by
+ *  their bytes; and the positions of the commits containing each word,
+ *  again as starting offsets followed by positions. After all that come
+ *  the ids and message hashes of the commits added since, which are
+ *  merged into the rest once there are more than TAIL_LIMIT of them.
+ *  @author Simon Zhan */
+class MessageIndex {
+
+    /** First bytes of a message index file. **/
+    private static final int MAGIC = 0x4d534758;
+    /** Version of the file format. **/
+    private static final int VERSION = 1;
+    /** Length of the header: magic, version, and the numbers of
+     *  commits, buckets, words, bytes of words and word positions. **/
+    private static final int HEADER = 7 * 4;
+    /** Length of a commit id in bytes. **/
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+    /** Length of a record of the unsorted tail: id and message hash. **/
+    private static final int TAIL_RECORD = ID_LENGTH + 8;
+    /** Largest number of commits kept in the tail before the file is
+     *  rebuilt. **/
+    private static final int TAIL_LIMIT = 256;
+
+    /** File holding the index. **/
+    private final File _file;
+    /** Contents of the file, mapped on first use. **/
+    private ByteBuffer _buf;
+
+    /** Number of commits in the main part. **/
+    private int _count;
+    /** Number of hash buckets. **/
+    private int _buckets;
+    /** Number of distinct words. **/
+    private int _words;
+    /** Offsets of the sections of the file. **/
+    private int _hashes, _starts, _slots, _wordStarts, _wordBytes,
+        _postStarts, _posts, _tail;
+    /** Number of commits in the tail. **/
+    private int _tailCount;
+
+    /** Constructor for the index kept in FILE.
+     * @param file File. */
+    MessageIndex(File file) {
+        _file = file;
+    }
+
+    /** Return the number of commits indexed.
+     * @return int return. */
+    int size() {
+        if (!load()) {
+            return 0;
+        }
+        return _count + _tailCount;
+    }
+
+    /** Map the file and find its sections, if not done yet. Return
+     *  false if there is no file.
+     * @return boolean return. */
+    private boolean load() {
+        if (_buf != null) {
+            return true;
+        }
+        if (!_file.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            _buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_buf.getInt(0) != MAGIC || _buf.getInt(4) != VERSION) {
+            throw Utils.error("Unrecognized message index.");
+        }
+        _count = _buf.getInt(8);
+        _buckets = _buf.getInt(12);
+        _words = _buf.getInt(16);
+        _hashes = HEADER + _count * ID_LENGTH;
+        _starts = _hashes + _count * 8;
+        _slots = _starts + (_buckets + 1) * 4;
+        _wordStarts = _slots + _count * 4;
+        _wordBytes = _wordStarts + (_words + 1) * 4;
+        _postStarts = _wordBytes + _buf.getInt(20);
+        _posts = _postStarts + (_words + 1) * 4;
+        _tail = _posts + _buf.getInt(24) * 4;
+        _tailCount = (_buf.capacity() - _tail) / TAIL_RECORD;
+        return true;
+    }
+
+    /** Return the hash of MESSAGE used by the index.
+     * @param message String.
+     * @return long return. */
+    static long hash(String message) {
+        return ByteBuffer.wrap(Utils.fromHex(Utils.sha1(message))).
+            getLong();
+    }
+
+    /** Return the words of MESSAGE, in lower case.
+     * @param message String.
+     * @return TreeSet return. */
+    static TreeSet<String> words(String message) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String word : message.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Return the id of the commit at position I.
+     * @param i int.
+     * @return String return. */
+    private String id(int i) {
+        byte[] entry = new byte[ID_LENGTH];
+        if (i < _count) {
+            _buf.get(HEADER + i * ID_LENGTH, entry);
+        } else {
+            _buf.get(_tail + (i - _count) * TAIL_RECORD, entry);
+        }
+        return Utils.toHex(entry);
+    }
+
+    /** Return the message hash of the commit at position I.
+     * @param i int.
+     * @return long return. */
+    private long hashAt(int i) {
+        if (i < _count) {
+            return _buf.getLong(_hashes + i * 8);
+        }
+        return _buf.getLong(_tail + (i - _count) * TAIL_RECORD + ID_LENGTH);
+    }
+
+    /** Return the ids of the commits whose message is MESSAGE, reading
+     *  commits through COMMITS to rule out hash collisions.
+     * @param message String.
+     * @param commits Function.
+     * @return List return. */
+    List<String> exact(String message, Function<String, Commit> commits) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!load()) {
+            return result;
+        }
+        long h = hash(message);
+        ArrayList<Integer> found = new ArrayList<>();
+        if (_buckets > 0) {
+            int b = (int) Long.remainderUnsigned(h, _buckets);
+            for (int k = _buf.getInt(_starts + b * 4);
+                 k < _buf.getInt(_starts + (b + 1) * 4); k += 1) {
+                int i = _buf.getInt(_slots + k * 4);
+                if (hashAt(i) == h) {
+                    found.add(i);
+                }
+            }
+        }
+        for (int i = _count; i < _count + _tailCount; i += 1) {
+            if (hashAt(i) == h) {
+                found.add(i);
+            }
+        }
+        for (int i : found) {
+            String id = id(i);
+            if (commits.apply(id).getmessage().equals(message)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Return the ids of the commits whose messages contain the word
+     *  WORD or, if PREFIX, a word starting with WORD, reading the
+     *  commits added since the last rebuild through COMMITS.
+     * @param word String.
+     * @param prefix boolean.
+     * @param commits Function.
+     * @return List return. */
+    List<String> words(String word, boolean prefix,
+                       Function<String, Commit> commits) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!load()) {
+            return result;
+        }
+        String key = word.toLowerCase();
+        TreeSet<Integer> found = new TreeSet<>();
+        int lo = 0, hi = _words;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (wordAt(mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int w = lo; w < _words; w += 1) {
+            String s = wordAt(w);
+            if (prefix ? !s.startsWith(key) : !s.equals(key)) {
+                break;
+            }
+            for (int k = _buf.getInt(_postStarts + w * 4);
+                 k < _buf.getInt(_postStarts + (w + 1) * 4); k += 1) {
+                found.add(_buf.getInt(_posts + k * 4));
+            }
+        }
+        for (int i : found) {
+            result.add(id(i));
+        }
+        for (int i = _count; i < _count + _tailCount; i += 1) {
+            String id = id(i);
+            if (contains(commits.apply(id).getmessage(), word, prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Return true if MESSAGE contains the word WORD or, if PREFIX, a
+     *  word starting with WORD, ignoring case.
+     * @param message String.
+     * @param word String.
+     * @param prefix boolean.
+     * @return boolean return. */
+    static boolean contains(String message, String word, boolean prefix) {
+        String key = word.toLowerCase();
+        for (String s : words(message)) {
+            if (prefix ? s.startsWith(key) : s.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the word at position W of the sorted words.
+     * @param w int.
+     * @return String return. */
+    private String wordAt(int w) {
+        int start = _buf.getInt(_wordStarts + w * 4);
+        byte[] bytes = new byte[_buf.getInt(_wordStarts + (w + 1) * 4)
+                                - start];
+        _buf.get(_wordBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Add the commits ADDED, none of which may already be indexed, to
+     *  this index, after all the commits already in it. COMMITS reads
+     *  the commits added before, should the index need rebuilding.
+     * @param added List.
+     * @param commits Function. */
+    void add(List<Commit> added, Function<String, Commit> commits) {
+        if (added.isEmpty()) {
+            return;
+        }
+        if (!load() || _tailCount + added.size() > TAIL_LIMIT) {
+            ArrayList<String> ids = new ArrayList<>();
+            ArrayList<String> messages = new ArrayList<>();
+            for (int i = 0; i < size(); i += 1) {
+                ids.add(id(i));
+                messages.add(i < _count ? null
+                              : commits.apply(ids.get(i)).getmessage());
+            }
+            for (Commit c : added) {
+                ids.add(c.gethashid());
+                messages.add(c.getmessage());
+            }
+            rebuild(ids, messages);
+            return;
+        }
+        _buf = null;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_file, true)))) {
+            for (Commit c : added) {
+                out.write(Utils.fromHex(c.gethashid()));
+                out.writeLong(hash(c.getmessage()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrite the file with just the commits IDS, in that order,
+     *  reading them through COMMITS.
+     * @param ids List.
+     * @param commits Function. */
+    void replace(List<String> ids, Function<String, Commit> commits) {
+        _buf = null;
+        ArrayList<String> messages = new ArrayList<>();
+        for (String id : ids) {
+            messages.add(commits.apply(id).getmessage());
+        }
+        rebuild(ids, messages);
+    }
+
+    /** Rewrite the file with the commits IDS, in that order, whose
+     *  messages are MESSAGES. A null message stands for a commit whose
+     *  message hash and words are taken from the current file.
+     * @param ids List.
+     * @param messages List. */
+    private void rebuild(List<String> ids, List<String> messages) {
+        int n = ids.size();
+        long[] hashes = new long[n];
+        TreeMap<String, ArrayList<Integer>> posts = new TreeMap<>();
+        for (int i = 0; i < n; i += 1) {
+            if (messages.get(i) != null) {
+                hashes[i] = hash(messages.get(i));
+                for (String w : words(messages.get(i))) {
+                    posts.computeIfAbsent(w, k -> new ArrayList<>()).add(i);
+                }
+            } else {
+                hashes[i] = hashAt(i);
+            }
+        }
+        if (_buf != null) {
+            for (int w = 0; w < _words; w += 1) {
+                ArrayList<Integer> list = posts.computeIfAbsent(wordAt(w),
+                        k -> new ArrayList<>());
+                for (int k = _buf.getInt(_postStarts + w * 4);
+                     k < _buf.getInt(_postStarts + (w + 1) * 4); k += 1) {
+                    list.add(_buf.getInt(_posts + k * 4));
+                }
+            }
+        }
+        int buckets = Math.max(1, n);
+        int[] starts = new int[buckets + 1];
+        for (long h : hashes) {
+            starts[(int) Long.remainderUnsigned(h, buckets) + 1] += 1;
+        }
+        for (int b = 0; b < buckets; b += 1) {
+            starts[b + 1] += starts[b];
+        }
+        int[] slots = new int[n];
+        int[] fill = Arrays.copyOf(starts, buckets);
+        for (int i = 0; i < n; i += 1) {
+            int b = (int) Long.remainderUnsigned(hashes[i], buckets);
+            slots[fill[b]] = i;
+            fill[b] += 1;
+        }
+        ArrayList<byte[]> words = new ArrayList<>();
+        int wordBytes = 0, postings = 0;
+        for (Map.Entry<String, ArrayList<Integer>> e : posts.entrySet()) {
+            byte[] bytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+            words.add(bytes);
+            wordBytes += bytes.length;
+            e.getValue().sort(null);
+            postings += e.getValue().size();
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(buckets);
+            out.writeInt(words.size());
+            out.writeInt(wordBytes);
+            out.writeInt(postings);
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+            for (long h : hashes) {
+                out.writeLong(h);
+            }
+            for (int s : starts) {
+                out.writeInt(s);
+            }
+            for (int s : slots) {
+                out.writeInt(s);
+            }
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] bytes : words) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            for (byte[] bytes : words) {
+                out.write(bytes);
+            }
+            offset = 0;
+            out.writeInt(offset);
+            for (ArrayList<Integer> list : posts.values()) {
+                offset += list.size();
+                out.writeInt(offset);
+            }
+            for (ArrayList<Integer> list : posts.values()) {
+                for (int i : list) {
+                    out.writeInt(i);
+                }
+            }
+        } catch (IOException excp) {
+            boolean a = tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _buf = null;
+    }
+}
@@ -0,0 +1,71 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/** Tests of the MessageIndex class.
+ *  @author Simon Zhan
+ */
+public class MessageIndexTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return an index kept in a fresh temporary directory. */
+    private MessageIndex emptyIndex() throws IOException {
+        return new MessageIndex(_dirs.file("message-index"));
+    }
+
+    /** Return the commit made at TIME with message MESSAGE. */
+    private static Commit commit(int time, String message) {
+        return new Commit(Tree.emptyId(), null, null, message,
+                          new Date(time));
+    }
+
+    @Test
+    public void lookupsAcrossRebuilds() throws IOException {
+        MessageIndex index = emptyIndex();
+        HashMap<String, Commit> commits = new HashMap<>();
+        ArrayList<String> evens = new ArrayList<>();
+        ArrayList<String> all = new ArrayList<>();
+        for (int batch = 0; batch < 30; batch += 1) {
+            ArrayList<Commit> added = new ArrayList<>();
+            for (int i = 0; i < 20; i += 1) {
+                int n = batch * 20 + i;
+                Commit c = commit(n, n % 2 == 0 ? "Even commit"
+                                  : "odd commit number " + n);
+                commits.put(c.gethashid(), c);
+                added.add(c);
+                all.add(c.gethashid());
+                if (n % 2 == 0) {
+                    evens.add(c.gethashid());
+                }
+            }
+            index.add(added, commits::get);
+            assertEquals(all.size(), index.size());
+        }
+        assertEquals(evens, index.exact("Even commit", commits::get));
+        assertTrue(index.exact("even commit", commits::get).isEmpty());
+        assertEquals(all, index.words("COMMIT", false, commits::get));
+        assertEquals(Arrays.asList(all.get(457)),
+                     index.words("457", false, commits::get));
+        List<String> prefixed = index.words("45", true, commits::get);
+        assertEquals(6, prefixed.size());
+        assertEquals(all.get(45), prefixed.get(0));
+        assertEquals(all.get(459), prefixed.get(5));
+
+        index.replace(evens, commits::get);
+        assertEquals(evens.size(), index.size());
+        assertTrue(index.words("odd", false, commits::get).isEmpty());
+        assertEquals(evens, index.words("ev", true, commits::get));
+    }
+}
@@ -0,0 +1,118 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of objects decoded from an object store: commits,
+ *  the texts of trees and files, and the files of whole trees. Since
+ *  an id always names the same contents, entries never go stale. Each
+ *  entry is charged an estimate of the memory it holds, and once the
+ *  total passes the capacity the least recently used entries are
+ *  dropped. Entries too large to be worth keeping are not added. A
+ *  cache may be shared by several threads.
+ *  @author Simon Zhan */
+class ObjectCache {
+
+    /** Default capacity in bytes. **/
+    static final long CAPACITY = 64L << 20;
+    /** Largest share of the capacity one entry may take. **/
+    private static final int MAX_SHARE = 16;
+    /** Estimated size of an entry before its contents. **/
+    static final long OVERHEAD = 64;
+
+    /** An entry of the cache. */
+    private static class Cached {
+        /** The object. **/
+        private final Object _value;
+        /** Its estimated size in bytes. **/
+        private final long _size;
+
+        /** Constructor for an entry holding VALUE, of SIZE bytes.
+         * @param value Object.
+         * @param size long. */
+        Cached(Object value, long size) {
+            _value = value;
+            _size = size;
+        }
+    }
+
+    /** Entries by kind and id, least recently used first. **/
+    private final LinkedHashMap<String, Cached> _entries;
+    /** Most bytes the entries may take. **/
+    private final long _capacity;
+    /** Bytes taken by the entries. **/
+    private long _size;
+
+    /** Constructor for an empty cache of the default capacity. */
+    ObjectCache() {
+        this(CAPACITY);
+    }
+
+    /** Constructor for an empty cache holding at most CAPACITY bytes.
+     * @param capacity long. */
+    ObjectCache(long capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Return the object of class KIND cached for the given id, or null
+     *  if there is none.
+     * @param kind Class.
+     * @param id String.
+     * @param <T> type of the object.
+     * @return T return. */
+    synchronized <T> T get(Class<T> kind, String id) {
+        Cached entry = _entries.get(key(kind, id));
+        return entry == null ? null : kind.cast(entry._value);
+    }
+
+    /** Cache VALUE, an object of class KIND estimated to take SIZE
+     *  bytes, for the given id, dropping the least recently used
+     *  entries as needed.
+     * @param kind Class.
+     * @param id String.
+     * @param value Object.
+     * @param size long. */
+    synchronized void put(Class<?> kind, String id, Object value,
+                          long size) {
+        if (size > _capacity / MAX_SHARE) {
+            return;
+        }
+        Cached old = _entries.put(key(kind, id), new Cached(value, size));
+        _size += size - (old == null ? 0 : old._size);
+        Iterator<Map.Entry<String, Cached>> oldest =
+            _entries.entrySet().iterator();
+        while (_size > _capacity) {
+            _size -= oldest.next().getValue()._size;
+            oldest.remove();
+        }
+    }
+
+    /** Return the key of the object of class KIND with the given id.
+     * @param kind Class.
+     * @param id String.
+     * @return String return. */
+    private static String key(Class<?> kind, String id) {
+        return kind.getSimpleName() + ' ' + id;
+    }
+
+    /** Return the estimated size of S in bytes.
+     * @param s String.
+     * @return long return. */
+    static long sizeOf(String s) {
+        return OVERHEAD + 2L * s.length();
+    }
+
+    /** Return the estimated number of bytes the entries take.
+     * @return long return. */
+    synchronized long size() {
+        return _size;
+    }
+
+    /** Return the number of entries.
+     * @return int return. */
+    synchronized int count() {
+        return _entries.size();
+    }
+}
@@ -0,0 +1,68 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+/** Tests of the ObjectCache class.
+ *  @author Simon Zhan
+ */
+public class ObjectCacheTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    @Test
+    public void leastRecentlyUsedGoFirst() {
+        ObjectCache cache = new ObjectCache(1600);
+        cache.put(String.class, "a", "A", 100);
+        cache.put(String.class, "b", "B", 100);
+        cache.put(String.class, "c", "C", 100);
+        assertEquals("A", cache.get(String.class, "a"));
+        for (int i = 0; i < 14; i += 1) {
+            cache.put(String.class, "x" + i, "X", 100);
+        }
+        assertEquals(1600, cache.size());
+        assertEquals("A", cache.get(String.class, "a"));
+        assertNull(cache.get(String.class, "b"));
+        assertEquals("C", cache.get(String.class, "c"));
+        cache.put(String.class, "d", "D", 100);
+        assertNull(cache.get(String.class, "x0"));
+        assertEquals(16, cache.count());
+    }
+
+    @Test
+    public void sizesAreCharged() {
+        ObjectCache cache = new ObjectCache(1600);
+        cache.put(String.class, "big", "B", 101);
+        assertNull(cache.get(String.class, "big"));
+        cache.put(String.class, "a", "A", 100);
+        cache.put(String.class, "a", "A2", 50);
+        assertEquals(50, cache.size());
+        assertEquals(1, cache.count());
+        cache.put(Integer.class, "a", 7, 50);
+        assertEquals("A2", cache.get(String.class, "a"));
+        assertEquals(Integer.valueOf(7), cache.get(Integer.class, "a"));
+        assertEquals(2, cache.count());
+    }
+
+    @Test
+    public void storeReadsThroughTheCache() throws IOException {
+        ObjectCache cache = new ObjectCache();
+        ObjectStore store = new ObjectStore(_dirs.dir(), cache);
+        Commit commit = new Commit();
+        store.putCommit(commit);
+        Commit first = store.getCommit(commit.gethashid());
+        assertTrue(first == store.getCommit(commit.gethashid()));
+        store.put(Utils.sha1("text"), "text");
+        String text = store.readString(Utils.sha1("text"));
+        assertEquals("text", text);
+        assertTrue(text == store.readString(Utils.sha1("text")));
+        assertEquals(2, cache.count());
+        assertNull(store.getCommit(Utils.sha1("missing")));
+        assertEquals(2, cache.count());
+    }
+}
@@ -0,0 +1,911 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressed store of gitlet objects: commits and the contents
+ *  of files. Each object lives in its own file named by its SHA-1 id,
+ *  so a command reads and writes only the objects it actually touches.
+ *  Files are spread over subdirectories named by the first two digits
+ *  of the id, which keeps every directory small. Objects are kept
+ *  deflate-compressed and are always read and written as streams, so
+ *  no object has to fit in memory. Objects may be read and saved by
+ *  several threads at once.
+ *
+ *  Contents that deflate would not shrink, such as images and archives,
+ *  are stored as they are after a STORED byte, which never starts a
+ *  deflated file. Such objects are mapped or copied by the system
+ *  straight from their files: checking them out, or reading them with
+ *  map, never copies their bytes onto the heap.
+ *
+ *  Files of CHUNK_THRESHOLD bytes or more are split by a Chunker into
+ *  chunks, each stored as an object of its own. The object named by
+ *  the file's id then lists the ids of its chunks, after the CHUNKED
+ *  header, so a new version of a large file adds only the chunks it
+ *  changed. Reading such an object yields the joined chunks. Any
+ *  contents that happen to start with the header are chunked too,
+ *  so a stored object starting with it is always a list.
+ *
+ *  The repack command moves every object into packs, kept in the pack
+ *  subdirectory, where similar objects are stored as deltas. Objects
+ *  are looked for first as files of their own and then in the packs.
+ *
+ *  A store that batches its writes, as a command changing the
+ *  repository does, keeps the small whole objects it saves in memory,
+ *  and flush writes them all into one pack, synced once, instead of a
+ *  file each, which would each need syncing. Chunks and objects of
+ *  BUFFER_SIZE bytes or more still get files of their own.
+ *  @author Simon Zhan */
+class ObjectStore {
+
+    /** Directory holding the object files. **/
+    private final File _dir;
+    /** Number of leading id digits naming the subdirectory. **/
+    private static final int FANOUT = 2;
+    /** Size of the buffers used to stream objects. **/
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Files at least this long are stored in chunks. **/
+    static final long CHUNK_THRESHOLD = 1 << 20;
+    /** First byte of an object file stored uncompressed. **/
+    private static final int STORED = 0;
+    /** Deflated size, as a fraction of the sampled size, below which
+     *  an object is worth compressing. **/
+    private static final double WORTH_DEFLATING = 0.9;
+    /** First bytes of an object listing the chunks of a file. **/
+    private static final byte[] CHUNKED =
+        "gitlet chunks\n".getBytes(StandardCharsets.UTF_8);
+    /** Object files written since they were last synced. **/
+    private final Set<File> _unsynced =
+        Collections.synchronizedSet(new LinkedHashSet<>());
+    /** Most bytes of batched objects kept before they are packed. **/
+    private static final long BATCH_LIMIT = 64L << 20;
+    /** Contents of the small objects saved since the last flush, by id,
+     *  or null if this store does not batch its writes. **/
+    private LinkedHashMap<String, byte[]> _batch;
+    /** Total length of the contents in _batch. **/
+    private long _batchSize;
+    /** Packs of this store, found on first use. **/
+    private List<Pack> _packs;
+    /** Cache of the commits and texts read, or null. **/
+    private final ObjectCache _cache;
+    /** Estimated size of a commit read, besides its message. **/
+    private static final long COMMIT_SIZE = 640;
+
+    /** Constructor for a store kept in DIR.
+     * @param dir directory. */
+    ObjectStore(File dir) {
+        this(dir, null);
+    }
+
+    /** Constructor for a store kept in DIR, keeping the commits and
+     *  texts it reads in CACHE, if not null.
+     * @param dir directory.
+     * @param cache ObjectCache. */
+    ObjectStore(File dir, ObjectCache cache) {
+        _dir = dir;
+        _cache = cache;
+    }
+
+    /** Create the directory of the store if it does not exist yet. */
+    void create() {
+        boolean a = _dir.mkdirs();
+    }
+
+    /** Return the file holding the object with the given id.
+     * @param id string.
+     * @return File return. */
+    File file(String id) {
+        if (id.length() <= FANOUT) {
+            return Utils.join(_dir, id);
+        }
+        return Utils.join(_dir, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Return true if the object with the given id exists.
+     * @param id string.
+     * @return boolean return. */
+    boolean contains(String id) {
+        return id != null && (batched(id) != null || file(id).isFile()
+                              || pack(id) != null);
+    }
+
+    /** Return the packs of this store.
+     * @return List return. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = Pack.list(Utils.join(_dir, "pack"));
+        }
+        return _packs;
+    }
+
+    /** Return the pack holding the object with the given id, or null if
+     *  it is in none.
+     * @param id string.
+     * @return Pack return. */
+    private Pack pack(String id) {
+        for (Pack p : packs()) {
+            if (p.contains(id)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /** Save CONTENTS as the object with the given id, unless it is
+     *  already present. Each item of CONTENTS may be a String or a byte
+     *  array, as for Utils.writeContents.
+     * @param id string.
+     * @param contents Object. */
+    void put(String id, Object... contents) {
+        if (contains(id)) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object obj : contents) {
+            if (obj instanceof byte[]) {
+                bytes.writeBytes((byte[]) obj);
+            } else {
+                bytes.writeBytes(((String) obj).
+                        getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            store(id, new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Save the contents of SOURCE as the object with the given id,
+     *  unless it is already present. Large files are stored in chunks.
+     * @param id string.
+     * @param source File. */
+    void putFile(String id, File source) {
+        if (contains(id)) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            if (source.length() >= CHUNK_THRESHOLD) {
+                storeChunks(id, in);
+            } else {
+                store(id, in);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Save everything read from IN as the object with the given id,
+     *  in chunks if it starts like a list of chunks.
+     * @param id string.
+     * @param in InputStream. */
+    private void store(String id, InputStream in) throws IOException {
+        PushbackInputStream head = new PushbackInputStream(in,
+                CHUNKED.length);
+        if (startsChunked(head)) {
+            storeChunks(id, head);
+        } else {
+            storeRaw(id, head, true);
+        }
+    }
+
+    /** Split everything read from IN into chunks, save each one, and
+     *  save the list of them as the object with the given id.
+     * @param id string.
+     * @param in InputStream. */
+    private void storeChunks(String id, InputStream in) throws IOException {
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        list.writeBytes(CHUNKED);
+        Chunker chunker = new Chunker(in);
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            if (Arrays.equals(chunk, 0, Math.min(chunk.length,
+                    CHUNKED.length), CHUNKED, 0, CHUNKED.length)) {
+                storeChunk(Arrays.copyOf(chunk, 1), list);
+                storeChunk(Arrays.copyOfRange(chunk, 1, chunk.length), list);
+            } else {
+                storeChunk(chunk, list);
+            }
+        }
+        storeRaw(id, new ByteArrayInputStream(list.toByteArray()), true);
+    }
+
+    /** Save CHUNK as it is, unless it is already present, and add its
+     *  id to LIST. A chunk never starts with the CHUNKED header, which
+     *  would make it read as a list; storeChunks splits any that do.
+     * @param chunk byte[].
+     * @param list ByteArrayOutputStream. */
+    private void storeChunk(byte[] chunk, ByteArrayOutputStream list) {
+        String chunkId = Utils.sha1(chunk);
+        if (!contains(chunkId)) {
+            storeRaw(chunkId, new ByteArrayInputStream(chunk), false);
+        }
+        list.writeBytes((chunkId + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return true if IN starts with the CHUNKED header, leaving IN
+     *  where it was.
+     * @param in PushbackInputStream.
+     * @return boolean return. */
+    private static boolean startsChunked(PushbackInputStream in)
+        throws IOException {
+        byte[] first = in.readNBytes(CHUNKED.length);
+        in.unread(first);
+        return Arrays.equals(first, CHUNKED);
+    }
+
+    /** Save everything read from IN as the object with the given id, as
+     *  it is, compressed unless its first BUFFER_SIZE bytes do not
+     *  deflate well. The object is written to a temporary file first,
+     *  so that it never appears half-written. If WHOLE, so that it is
+     *  not a chunk, and it is shorter than BUFFER_SIZE, it is batched
+     *  instead, if this store batches its writes.
+     * @param id string.
+     * @param in InputStream.
+     * @param whole boolean. */
+    private void storeRaw(String id, InputStream in, boolean whole) {
+        File f = file(id);
+        File tmp = null;
+        try {
+            byte[] sample = in.readNBytes(BUFFER_SIZE);
+            if (whole && sample.length < BUFFER_SIZE
+                && addToBatch(id, sample)) {
+                return;
+            }
+            boolean a = f.getParentFile().mkdirs();
+            tmp = File.createTempFile(f.getName(), ".tmp",
+                    f.getParentFile());
+            boolean deflate = deflates(sample);
+            try (OutputStream out = deflate
+                     ? new DeflaterOutputStream(new FileOutputStream(tmp),
+                             new Deflater(), BUFFER_SIZE)
+                     : new FileOutputStream(tmp)) {
+                if (!deflate) {
+                    out.write(STORED);
+                }
+                out.write(sample);
+                in.transferTo(out);
+            }
+            Files.move(tmp.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            _unsynced.add(f);
+        } catch (IOException excp) {
+            boolean b = tmp != null && tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if SAMPLE deflates to less than WORTH_DEFLATING of
+     *  its size.
+     * @param sample byte[].
+     * @return boolean return. */
+    private static boolean deflates(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buf = new byte[sample.length];
+            int limit = (int) (sample.length * WORTH_DEFLATING);
+            int n = 0;
+            while (!deflater.finished() && n < limit) {
+                n += deflater.deflate(buf, n, limit - n);
+            }
+            return deflater.finished() && n < limit;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Return a stream of the contents of the object with the given id,
+     *  joining its chunks if it has any. The caller must close it.
+     * @param id string.
+     * @return InputStream return. */
+    InputStream open(String id) {
+        PushbackInputStream in = new PushbackInputStream(openRaw(id),
+                CHUNKED.length);
+        try {
+            if (!startsChunked(in)) {
+                return in;
+            }
+            in.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Iterator<String> chunks = chunks(id).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return openRaw(chunks.next());
+            }
+        });
+    }
+
+    /** Return a stream of the object with the given id as it is stored,
+     *  without joining chunks. The caller must close it.
+     * @param id string.
+     * @return InputStream return. */
+    private InputStream openRaw(String id) {
+        byte[] batched = batched(id);
+        if (batched != null) {
+            return new ByteArrayInputStream(batched);
+        }
+        for (boolean retry = true; true; retry = false) {
+            if (!file(id).isFile()) {
+                Pack p = pack(id);
+                if (p != null) {
+                    return new ByteArrayInputStream(p.read(id));
+                }
+            }
+            FileInputStream in = null;
+            try {
+                in = new FileInputStream(file(id));
+                if (in.read() == STORED) {
+                    return new BufferedInputStream(in, BUFFER_SIZE);
+                }
+                in.getChannel().position(0);
+                return new InflaterInputStream(in, new Inflater(),
+                        BUFFER_SIZE);
+            } catch (FileNotFoundException excp) {
+                if (!retry) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                rescan();
+            } catch (IOException excp) {
+                close(in);
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the channel of the file of the object with the given id,
+     *  placed after its STORED byte, if the object is stored
+     *  uncompressed in a file of its own, or else null. The caller
+     *  must close it.
+     * @param id string.
+     * @return FileChannel return. */
+    private FileChannel openStored(String id) {
+        if (!file(id).isFile()) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file(id).toPath(),
+                    StandardOpenOption.READ);
+            ByteBuffer first = ByteBuffer.allocate(1);
+            if (channel.read(first) == 1 && first.get(0) == STORED) {
+                return channel;
+            }
+            channel.close();
+            return null;
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            close(channel);
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Close CLOSEABLE, if not null, ignoring any failure.
+     * @param closeable Closeable. */
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Forget the packs listed so far, so that they are listed again
+     *  when next needed. A command that does not hold the lock calls
+     *  this when an object it looked for has just been packed by
+     *  another. */
+    private synchronized void rescan() {
+        _packs = null;
+    }
+
+    /** Return the ids of the chunks of the object with the given id, or
+     *  none if it is not stored in chunks.
+     * @param id string.
+     * @return List return. */
+    List<String> chunks(String id) {
+        ArrayList<String> result = new ArrayList<>();
+        try (PushbackInputStream in = new PushbackInputStream(openRaw(id),
+                CHUNKED.length)) {
+            if (!startsChunked(in)) {
+                return result;
+            }
+            in.skipNBytes(CHUNKED.length);
+            String list = new String(in.readAllBytes(),
+                    StandardCharsets.UTF_8);
+            for (String chunk : list.split("\n")) {
+                if (!chunk.isEmpty()) {
+                    result.add(chunk);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return the entire contents of the object with the given id.
+     * @param id string.
+     * @return byte[] return. */
+    byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the object with the given id as it is stored: a list of
+     *  chunks rather than their contents, if it has any.
+     * @param id string.
+     * @return byte[] return. */
+    byte[] readRaw(String id) {
+        try (InputStream in = openRaw(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the entire contents of the object with the given id as a
+     *  String, kept in the cache.
+     * @param id string.
+     * @return String return. */
+    String readString(String id) {
+        String result = _cache == null ? null
+            : _cache.get(String.class, id);
+        if (result == null) {
+            result = new String(read(id), StandardCharsets.UTF_8);
+            if (_cache != null) {
+                _cache.put(String.class, id, result,
+                        ObjectCache.sizeOf(result));
+            }
+        }
+        return result;
+    }
+
+    /** Return a read-only view of the contents of the object with the
+     *  given id. An object stored uncompressed in a file of its own is
+     *  mapped from the file, so its bytes are never copied onto the
+     *  heap; any other is read into a buffer.
+     * @param id string.
+     * @return ByteBuffer return. */
+    ByteBuffer map(String id) {
+        try (FileChannel in = openStored(id)) {
+            if (in != null) {
+                MappedByteBuffer body = in.map(FileChannel.MapMode.READ_ONLY,
+                        1, in.size() - 1);
+                if (!body.slice(0, Math.min(body.limit(), CHUNKED.length))
+                        .equals(ByteBuffer.wrap(CHUNKED))) {
+                    return body;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ByteBuffer.wrap(read(id)).asReadOnlyBuffer();
+    }
+
+    /** Write the contents of the object with the given id to OUT,
+     *  joining its chunks if it has any. Each chunk, or the whole
+     *  object, that is stored uncompressed in a file of its own is moved
+     *  by the system from that file, which for a file channel OUT never
+     *  passes through the heap; the others are inflated on the way.
+     * @param id string.
+     * @param out WritableByteChannel. */
+    void transferTo(String id, WritableByteChannel out) {
+        List<String> pieces = chunks(id);
+        if (pieces.isEmpty()) {
+            pieces = List.of(id);
+        }
+        try {
+            for (String piece : pieces) {
+                try (FileChannel in = openStored(piece)) {
+                    if (in != null) {
+                        for (long pos = 1, size = in.size(); pos < size;) {
+                            pos += in.transferTo(pos, size - pos, out);
+                        }
+                        continue;
+                    }
+                }
+                try (InputStream in = openRaw(piece)) {
+                    in.transferTo(Channels.newOutputStream(out));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the object with the given id to DEST,
+     *  creating or overwriting it as needed, through transferTo. They
+     *  go to a temporary file beside DEST first, which then replaces
+     *  it, so that DEST is left as it was if the object, or any of its
+     *  chunks, cannot be read. DEST keeps the permissions it had, and a
+     *  new file gets those the file system gives any new file.
+     * @param id string.
+     * @param dest File. */
+    void copyTo(String id, File dest) {
+        File tmp = null;
+        try {
+            tmp = workingTemp(dest.getAbsoluteFile().getParentFile());
+            if (dest.isFile() && Files.getFileStore(dest.toPath())
+                    .supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(tmp.toPath(),
+                        Files.getPosixFilePermissions(dest.toPath()));
+            }
+            try (FileChannel out = FileChannel.open(tmp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                transferTo(id, out);
+            }
+            Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | IllegalArgumentException excp) {
+            boolean a = tmp != null && tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a new empty file in DIR, made with the permissions the
+     *  file system gives new files, unlike File.createTempFile, whose
+     *  files only their owner may read.
+     * @param dir File.
+     * @return File return. */
+    private static File workingTemp(File dir) throws IOException {
+        while (true) {
+            File tmp = new File(dir, ".gitlet-" + Long.toHexString(
+                    ThreadLocalRandom.current().nextLong()) + ".tmp");
+            if (tmp.createNewFile()) {
+                return tmp;
+            }
+        }
+    }
+
+    /** Copy the object with the given id from OTHER into this store,
+     *  unless it is already present, together with its chunks. The file
+     *  of the object is copied as it is if OTHER has one, and so are
+     *  the deflated contents of an object OTHER packed whole, straight
+     *  from the mapped pack; only deltas, and small objects this store
+     *  batches, are inflated and stored again.
+     * @param other ObjectStore.
+     * @param id string. */
+    void copyFrom(ObjectStore other, String id) {
+        copyFrom(other, id, true);
+    }
+
+    /** Copy the object with the given id from OTHER as for
+     *  copyFrom(OTHER, ID), where WHOLE is false for a chunk.
+     * @param other ObjectStore.
+     * @param id string.
+     * @param whole boolean. */
+    private void copyFrom(ObjectStore other, String id, boolean whole) {
+        if (contains(id)) {
+            return;
+        }
+        for (String chunk : other.chunks(id)) {
+            copyFrom(other, chunk, false);
+        }
+        ByteBuffer deflated = null;
+        if (!other.file(id).isFile()) {
+            Pack p = other.pack(id);
+            deflated = p == null ? null : p.deflated(id);
+        }
+        long stored = deflated != null ? deflated.remaining()
+            : other.file(id).length();
+        if (!other.file(id).isFile() && deflated == null
+            || whole && stored < BUFFER_SIZE && batches()) {
+            storeRaw(id, new ByteArrayInputStream(other.readRaw(id)), whole);
+            return;
+        }
+        File f = file(id);
+        boolean a = f.getParentFile().mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(f.getName(), ".tmp",
+                    f.getParentFile());
+            if (deflated == null) {
+                Files.copy(other.file(id).toPath(), tmp.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (FileChannel out = FileChannel.open(tmp.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (deflated.hasRemaining()) {
+                        out.write(deflated);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            _unsynced.add(f);
+        } catch (IOException excp) {
+            boolean b = tmp != null && tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the object files written since this was last called, which
+     *  have not been synced to disk yet, and forget them.
+     * @return List return. */
+    List<File> unsynced() {
+        synchronized (_unsynced) {
+            ArrayList<File> result = new ArrayList<>(_unsynced);
+            _unsynced.clear();
+            return result;
+        }
+    }
+
+    /** Keep the small whole objects saved from now on in memory, until
+     *  flush writes them into one pack. */
+    synchronized void batch() {
+        if (_batch == null) {
+            _batch = new LinkedHashMap<>();
+        }
+    }
+
+    /** Return true if this store batches its writes.
+     * @return boolean return. */
+    private synchronized boolean batches() {
+        return _batch != null;
+    }
+
+    /** Return the contents of the batched object with the given id, or
+     *  null if there is none.
+     * @param id string.
+     * @return byte[] return. */
+    private synchronized byte[] batched(String id) {
+        return _batch == null ? null : _batch.get(id);
+    }
+
+    /** Add CONTENTS to the batch as the object with the given id, unless
+     *  this store does not batch its writes, and flush the batch once
+     *  it passes BATCH_LIMIT bytes. Return true if it was added.
+     * @param id string.
+     * @param contents byte[].
+     * @return boolean return. */
+    private synchronized boolean addToBatch(String id, byte[] contents) {
+        if (_batch == null) {
+            return false;
+        }
+        if (_batch.putIfAbsent(id, contents) == null) {
+            _batchSize += contents.length;
+        }
+        if (_batchSize > BATCH_LIMIT) {
+            flush(false);
+        }
+        return true;
+    }
+
+    /** Write the batched objects into one new pack, which is synced as
+     *  it is written, so that they are safely stored however many there
+     *  are. The objects of the earlier batch packs are added to it,
+     *  smallest pack first, for as long as the next is no more than
+     *  twice as large as all those taken so far; those packs are then
+     *  deleted. Batch packs thus grow geometrically with age, so they
+     *  stay few and each object is rewritten only a few times. */
+    void flush() {
+        flush(true);
+    }
+
+    /** Write the batched objects into one new pack as for flush, taking
+     *  in the earlier batch packs only if MERGE. A command may not delete
+     *  those while another reads the repository.
+     * @param merge boolean. */
+    synchronized void flush(boolean merge) {
+        if (_batch == null || _batch.isEmpty()) {
+            return;
+        }
+        ArrayList<String> ids = new ArrayList<>(_batch.keySet());
+        ArrayList<Pack> batches = new ArrayList<>();
+        for (Pack p : merge ? packs() : List.<Pack>of()) {
+            if (p.isBatch()) {
+                batches.add(p);
+            }
+        }
+        batches.sort(Comparator.comparingLong(Pack::size));
+        ArrayList<Pack> merged = new ArrayList<>();
+        long size = _batchSize;
+        for (Pack p : batches) {
+            if (p.size() > 2 * size) {
+                break;
+            }
+            merged.add(p);
+            size += p.size();
+            ids.addAll(p.ids());
+        }
+        List<File> written = Pack.write(Utils.join(_dir, "pack"),
+                Pack.BATCH, ids, this, false);
+        _batch.clear();
+        _batchSize = 0;
+        for (Pack p : merged) {
+            if (!written.contains(p.index())) {
+                p.delete();
+            }
+        }
+        _packs = null;
+    }
+
+    /** Move every object into new packs, placing the objects in ORDER
+     *  first, in that order, so that each is stored as a delta against
+     *  one before it where that saves space. ORDER should therefore keep
+     *  the versions of each file together. Objects not in ORDER follow.
+     *  If KEEP is not null, objects not in it are dropped instead. The
+     *  old packs and the objects' own files are then deleted.
+     * @param order List.
+     * @param keep Set. */
+    void repack(List<String> order, Set<String> keep) {
+        LinkedHashSet<String> ids = new LinkedHashSet<>();
+        for (String id : order) {
+            if (contains(id)) {
+                ids.add(id);
+            }
+        }
+        List<String> loose = looseIds();
+        ids.addAll(loose);
+        for (Pack p : packs()) {
+            ids.addAll(p.ids());
+        }
+        if (keep != null) {
+            ids.retainAll(keep);
+        }
+        List<File> written = Pack.write(Utils.join(_dir, "pack"),
+                new ArrayList<>(ids), this);
+        for (Pack p : packs()) {
+            if (!written.contains(p.index())) {
+                p.delete();
+            }
+        }
+        for (String id : loose) {
+            boolean a = file(id).delete();
+        }
+        pruneDirs();
+        _packs = null;
+    }
+
+    /** Delete the files of the objects not in LIVE. The batch packs
+     *  holding any such object are replaced by one holding just their
+     *  live objects; objects in packs written by repack are left where
+     *  they are.
+     * @param live Set. */
+    void sweep(Set<String> live) {
+        for (String id : looseIds()) {
+            if (!live.contains(id)) {
+                boolean a = file(id).delete();
+            }
+        }
+        pruneDirs();
+        ArrayList<Pack> swept = new ArrayList<>();
+        ArrayList<String> kept = new ArrayList<>();
+        for (Pack p : packs()) {
+            List<String> ids = p.isBatch() ? p.ids() : List.of();
+            if (!live.containsAll(ids)) {
+                swept.add(p);
+                for (String id : ids) {
+                    if (live.contains(id)) {
+                        kept.add(id);
+                    }
+                }
+            }
+        }
+        if (swept.isEmpty()) {
+            return;
+        }
+        List<File> written = Pack.write(Utils.join(_dir, "pack"),
+                Pack.BATCH, kept, this, false);
+        for (Pack p : swept) {
+            if (!written.contains(p.index())) {
+                p.delete();
+            }
+        }
+        rescan();
+    }
+
+    /** Return the ids of the objects kept in files of their own.
+     * @return List return. */
+    private List<String> looseIds() {
+        ArrayList<String> result = new ArrayList<>();
+        File[] dirs = _dir.listFiles();
+        if (dirs != null) {
+            for (File d : dirs) {
+                List<String> names = d.getName().length() == FANOUT
+                    ? Utils.plainFilenamesIn(d) : null;
+                if (names != null) {
+                    for (String name : names) {
+                        if (!name.endsWith(".tmp")) {
+                            result.add(d.getName() + name);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Delete the subdirectories of the store left empty. */
+    private void pruneDirs() {
+        File[] dirs = _dir.listFiles();
+        if (dirs != null) {
+            for (File d : dirs) {
+                if (d.getName().length() == FANOUT) {
+                    boolean a = d.delete();
+                }
+            }
+        }
+    }
+
+    /** Save the commit, unless it is already present.
+     * @param commit Commit. */
+    void putCommit(Commit commit) {
+        put(commit.gethashid(), commit.encode());
+    }
+
+    /** Return the commit with the given id, or null if there is none.
+     *  Commits read are kept in the cache.
+     * @param id string.
+     * @return Commit return. */
+    Commit getCommit(String id) {
+        Commit result = _cache == null ? null
+            : _cache.get(Commit.class, id);
+        if (result != null) {
+            return result;
+        }
+        if (!contains(id)) {
+            return null;
+        }
+        result = Commit.decode(id, read(id));
+        if (_cache != null) {
+            _cache.put(Commit.class, id, result, COMMIT_SIZE
+                    + ObjectCache.sizeOf(result.getmessage()));
+        }
+        return result;
+    }
+}
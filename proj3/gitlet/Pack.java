@@ -0,0 +1,647 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Many objects kept together in one file. Each object is stored either
+ *  whole or as a delta: the instructions for making it from an earlier
+ *  object in the same pack by copying ranges of it and inserting new
+ *  bytes. Successive versions of a file differ little, so most of them
+ *  take only a few bytes.
+ *
+ *  A pack is two files. The .pack file holds a header and then one
+ *  entry per object: its kind, the offset of its base if it is a delta,
+ *  the lengths of its stored and expanded forms, and its deflated
+ *  bytes. The .idx file holds a header, the raw ids of the objects in
+ *  sorted order, and the offset of each one's entry, so an object is
+ *  found by binary search.
+ *  @author Simon Zhan */
+class Pack {
+
+    /** First bytes of a pack file. **/
+    private static final int MAGIC = 0x5041434b;
+    /** First bytes of a pack index file. **/
+    private static final int INDEX_MAGIC = 0x50494458;
+    /** Version of both file formats. **/
+    private static final int VERSION = 1;
+    /** Length of the headers: magic, version and number of objects. **/
+    private static final int HEADER = 3 * 4;
+    /** Length of a raw object id in bytes. **/
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Kind of an entry holding a whole object. **/
+    private static final byte WHOLE = 0;
+    /** Kind of an entry holding a delta against another entry. **/
+    private static final byte DELTA = 1;
+
+    /** Number of recent objects tried as bases for each new one. **/
+    private static final int WINDOW = 10;
+    /** Longest chain of deltas that must be applied to read an object. **/
+    private static final int MAX_DEPTH = 10;
+    /** Objects larger than this are always stored whole. **/
+    private static final int MAX_DELTA_SIZE = 1 << 24;
+    /** Length of the blocks matched between an object and its base. **/
+    private static final int BLOCK = 16;
+    /** A pack is closed and another begun once it grows past this. **/
+    private static final int PACK_LIMIT = 1 << 30;
+    /** Most bytes an entry takes before its deflated bytes. **/
+    private static final int ENTRY_HEADER = 1 + 3 * 4;
+    /** Prefix of the names of packs written by repack. **/
+    static final String REPACKED = "pack";
+    /** Prefix of the names of packs holding the objects batched by
+     *  commands. **/
+    static final String BATCH = "batch";
+
+    /** The .idx file of this pack. **/
+    private final File _index;
+    /** Contents of the .idx file, mapped on first use. **/
+    private MappedByteBuffer _ids;
+    /** Contents of the .pack file, mapped on first use. **/
+    private MappedByteBuffer _data;
+    /** Number of objects in this pack. **/
+    private int _count;
+
+    /** Constructor for the pack whose index is INDEX.
+     * @param index File. */
+    Pack(File index) {
+        _index = index;
+    }
+
+    /** Return the packs in DIR.
+     * @param dir File.
+     * @return List return. */
+    static List<Pack> list(File dir) {
+        ArrayList<Pack> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".idx")) {
+                    result.add(new Pack(new File(dir, name)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the .pack file of the pack whose index is INDEX.
+     * @param index File.
+     * @return File return. */
+    private static File dataFile(File index) {
+        String name = index.getName();
+        return new File(index.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                + ".pack");
+    }
+
+    /** Return the .idx file of this pack.
+     * @return File return. */
+    File index() {
+        return _index;
+    }
+
+    /** Return true if this pack holds objects batched by commands.
+     * @return boolean return. */
+    boolean isBatch() {
+        return _index.getName().startsWith(BATCH + "-");
+    }
+
+    /** Return the length of the .pack file of this pack.
+     * @return long return. */
+    long size() {
+        return dataFile(_index).length();
+    }
+
+    /** Delete the files of this pack. */
+    void delete() {
+        boolean a = dataFile(_index).delete();
+        boolean b = _index.delete();
+    }
+
+    /** Map the index of this pack, if not done yet. */
+    private synchronized void load() {
+        if (_ids == null) {
+            MappedByteBuffer ids = map(_index);
+            if (ids.getInt(0) != INDEX_MAGIC || ids.getInt(4) != VERSION) {
+                throw Utils.error("Unrecognized pack index.");
+            }
+            _count = ids.getInt(8);
+            _ids = ids;
+        }
+    }
+
+    /** Return the contents of FILE, mapped read-only.
+     * @param file File.
+     * @return MappedByteBuffer return. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the ids of the objects in this pack, in sorted order.
+     * @return List return. */
+    List<String> ids() {
+        load();
+        ArrayList<String> result = new ArrayList<>();
+        byte[] entry = new byte[ID_LENGTH];
+        for (int i = 0; i < _count; i += 1) {
+            _ids.get(HEADER + i * ID_LENGTH, entry);
+            result.add(Utils.toHex(entry));
+        }
+        return result;
+    }
+
+    /** Return the position of ID in the index of this pack, or -1 if
+     *  it is not in this pack.
+     * @param id String.
+     * @return int return. */
+    private int find(String id) {
+        load();
+        byte[] key = Utils.fromHex(id);
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the id at position I of the index with KEY, as unsigned
+     *  bytes.
+     * @param i int.
+     * @param key byte[].
+     * @return int return. */
+    private int compare(int i, byte[] key) {
+        int off = HEADER + i * ID_LENGTH;
+        for (int k = 0; k < ID_LENGTH; k += 1) {
+            int c = Integer.compare(_ids.get(off + k) & 0xff,
+                    key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return true if this pack holds ID.
+     * @param id String.
+     * @return boolean return. */
+    boolean contains(String id) {
+        return id.length() == Utils.UID_LENGTH && find(id) >= 0;
+    }
+
+    /** Return the contents of the object ID, which must be in this pack.
+     * @param id String.
+     * @return byte[] return. */
+    byte[] read(String id) {
+        int i = find(id);
+        if (i < 0) {
+            throw new IllegalArgumentException("object not in pack: " + id);
+        }
+        loadData();
+        return readAt(_ids.getInt(HEADER + _count * ID_LENGTH + i * 4));
+    }
+
+    /** Return a read-only view of the deflated contents of the object
+     *  ID, which must be in this pack, or null if it is stored as a
+     *  delta. The view is part of the mapped pack, so it can be copied
+     *  into a file of its own without being inflated or copied onto the
+     *  heap.
+     * @param id String.
+     * @return ByteBuffer return. */
+    ByteBuffer deflated(String id) {
+        int i = find(id);
+        if (i < 0) {
+            throw new IllegalArgumentException("object not in pack: " + id);
+        }
+        loadData();
+        int offset = _ids.getInt(HEADER + _count * ID_LENGTH + i * 4);
+        if (_data.get(offset) == DELTA) {
+            return null;
+        }
+        return _data.slice(offset + 9, _data.getInt(offset + 1))
+            .asReadOnlyBuffer();
+    }
+
+    /** Map the data of this pack, if not done yet. */
+    private synchronized void loadData() {
+        if (_data == null) {
+            MappedByteBuffer data = map(dataFile(_index));
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw Utils.error("Unrecognized pack.");
+            }
+            _data = data;
+        }
+    }
+
+    /** Return the contents of the object whose entry starts at OFFSET.
+     * @param offset int.
+     * @return byte[] return. */
+    private byte[] readAt(int offset) {
+        byte kind = _data.get(offset);
+        int pos = offset + 1;
+        int base = 0;
+        if (kind == DELTA) {
+            base = _data.getInt(pos);
+            pos += 4;
+        }
+        int stored = _data.getInt(pos);
+        byte[] bytes = new byte[_data.getInt(pos + 4)];
+        pos += 8;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(_data.slice(pos, stored));
+            int n = 0;
+            while (n < bytes.length && !inflater.finished()) {
+                n += inflater.inflate(bytes, n, bytes.length - n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return kind == DELTA ? patch(readAt(base), bytes) : bytes;
+    }
+
+    /** An object written to a pack, kept while it may serve as a base. */
+    private static class Written {
+        /** Contents of the object. **/
+        private final byte[] _bytes;
+        /** Offset of its entry. **/
+        private final int _offset;
+        /** Number of deltas applied to read it. **/
+        private final int _depth;
+
+        /** Constructor for an object with contents BYTES whose entry is
+         *  at OFFSET and takes DEPTH deltas to read.
+         * @param bytes byte[].
+         * @param offset int.
+         * @param depth int. */
+        Written(byte[] bytes, int offset, int depth) {
+            _bytes = bytes;
+            _offset = offset;
+            _depth = depth;
+        }
+    }
+
+    /** Write the objects IDS, read from STORE, into new packs in DIR.
+     *  Each object is tried as a delta against the few objects written
+     *  just before it, so IDS should place similar objects, such as the
+     *  versions of one file, next to each other. Return the .idx files
+     *  of the new packs.
+     * @param dir File.
+     * @param ids List.
+     * @param store ObjectStore.
+     * @return List return. */
+    static List<File> write(File dir, List<String> ids, ObjectStore store) {
+        return write(dir, REPACKED, ids, store, true);
+    }
+
+    /** Write the objects IDS, read from STORE, into new packs in DIR
+     *  whose names start with PREFIX, trying each as a delta, as for
+     *  write(DIR, IDS, STORE), only if DELTAS. Return the .idx files of
+     *  the new packs.
+     * @param dir File.
+     * @param prefix String.
+     * @param ids List.
+     * @param store ObjectStore.
+     * @param deltas boolean.
+     * @return List return. */
+    static List<File> write(File dir, String prefix, List<String> ids,
+                            ObjectStore store, boolean deltas) {
+        boolean a = dir.mkdirs();
+        ArrayList<File> result = new ArrayList<>();
+        int start = 0;
+        while (start < ids.size()) {
+            start = writeOne(dir, prefix, ids, start, store, deltas,
+                             result);
+        }
+        return result;
+    }
+
+    /** Write the objects of IDS from position START on, read from
+     *  STORE, into one new pack in DIR named with PREFIX, stopping once
+     *  it passes PACK_LIMIT or before an object whose entry would end
+     *  past the largest offset an int holds, and add its .idx file to
+     *  WRITTEN. An object too large for even an empty pack is refused.
+     *  Objects are tried as deltas only if DELTAS. Return the position
+     *  of the first object not written.
+     * @param dir File.
+     * @param prefix String.
+     * @param ids List.
+     * @param start int.
+     * @param store ObjectStore.
+     * @param deltas boolean.
+     * @param written List.
+     * @return int return. */
+    private static int writeOne(File dir, String prefix, List<String> ids,
+                                int start, ObjectStore store,
+                                boolean deltas, List<File> written) {
+        HashMap<String, Integer> offsets = new HashMap<>();
+        ArrayDeque<Written> window = new ArrayDeque<>();
+        File tmp = tempFile(dir, prefix);
+        int next = start;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+            while (next < ids.size() && out.size() < PACK_LIMIT) {
+                String id = ids.get(next);
+                next += 1;
+                if (offsets.containsKey(id)) {
+                    continue;
+                }
+                byte[] bytes = store.readRaw(id);
+                Written base = null;
+                byte[] best = null;
+                if (deltas && bytes.length <= MAX_DELTA_SIZE) {
+                    for (Written w : window) {
+                        if (w._depth >= MAX_DEPTH) {
+                            continue;
+                        }
+                        byte[] d = delta(w._bytes, bytes);
+                        if (d.length < bytes.length / 2
+                                && (best == null || d.length < best.length)) {
+                            base = w;
+                            best = d;
+                        }
+                    }
+                }
+                int offset = out.size();
+                byte[] stored = deflate(best == null ? bytes : best);
+                long end = (long) offset + ENTRY_HEADER + stored.length;
+                if (end > Integer.MAX_VALUE) {
+                    if (offsets.isEmpty()) {
+                        throw new IllegalArgumentException(
+                                "object too large to pack: " + id);
+                    }
+                    next -= 1;
+                    break;
+                }
+                offsets.put(id, offset);
+                if (best == null) {
+                    out.writeByte(WHOLE);
+                } else {
+                    out.writeByte(DELTA);
+                    out.writeInt(base._offset);
+                }
+                out.writeInt(stored.length);
+                out.writeInt(best == null ? bytes.length : best.length);
+                out.write(stored);
+                if (deltas && bytes.length <= MAX_DELTA_SIZE) {
+                    window.addLast(new Written(bytes, offset,
+                            base == null ? 0 : base._depth + 1));
+                    if (window.size() > WINDOW) {
+                        window.removeFirst();
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            boolean b = tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String[] sorted = offsets.keySet().toArray(new String[0]);
+        Arrays.sort(sorted);
+        String name = prefix + "-" + Utils.sha1((Object[]) sorted);
+        try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer count = ByteBuffer.allocate(4);
+            count.putInt(0, sorted.length);
+            channel.write(count, 8);
+            channel.force(true);
+            Files.move(tmp.toPath(), new File(dir, name + ".pack").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File index = new File(dir, name + ".idx");
+        writeIndex(index, sorted, offsets);
+        written.add(index);
+        return next;
+    }
+
+    /** Write to FILE the index of a pack holding the objects SORTED,
+     *  whose entries start at OFFSETS.
+     * @param file File.
+     * @param sorted String[].
+     * @param offsets HashMap. */
+    private static void writeIndex(File file, String[] sorted,
+                                   HashMap<String, Integer> offsets) {
+        File tmp = tempFile(file.getParentFile(), file.getName());
+        try (FileOutputStream raw = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(raw))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.length);
+            for (String id : sorted) {
+                out.write(Utils.fromHex(id));
+            }
+            for (String id : sorted) {
+                out.writeInt(offsets.get(id));
+            }
+            out.flush();
+            raw.getFD().sync();
+        } catch (IOException excp) {
+            boolean b = tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.syncDirectory(file.getParentFile());
+    }
+
+    /** Return a new empty temporary file in DIR whose name starts with
+     *  PREFIX.
+     * @param dir File.
+     * @param prefix String.
+     * @return File return. */
+    private static File tempFile(File dir, String prefix) {
+        try {
+            return File.createTempFile(prefix, ".tmp", dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return BYTES deflated.
+     * @param bytes byte[].
+     * @return byte[] return. */
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Return the instructions for making TARGET from BASE. They start
+     *  with the lengths of BASE and TARGET, followed by copies, a zero
+     *  byte with the offset and length of a range of BASE, and inserts,
+     *  a byte from 1 to 127 giving the number of new bytes that follow.
+     *  Matches are found by looking up each BLOCK bytes of TARGET among
+     *  the aligned blocks of BASE and extending them both ways.
+     * @param base byte[].
+     * @param target byte[].
+     * @return byte[] return. */
+    static byte[] delta(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int pending = 0, i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(hash(target, i));
+            if (at == null || !Arrays.equals(base, at, at + BLOCK,
+                                             target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int from = at, to = i;
+            while (from > 0 && to > pending
+                   && base[from - 1] == target[to - 1]) {
+                from -= 1;
+                to -= 1;
+            }
+            int end = i + BLOCK, baseEnd = at + BLOCK;
+            while (end < target.length && baseEnd < base.length
+                   && base[baseEnd] == target[end]) {
+                end += 1;
+                baseEnd += 1;
+            }
+            insert(out, target, pending, to);
+            out.write(0);
+            writeVarint(out, from);
+            writeVarint(out, end - to);
+            i = pending = end;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the object made from BASE by the instructions DELTA.
+     * @param base byte[].
+     * @param delta byte[].
+     * @return byte[] return. */
+    static byte[] patch(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not fit base");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == 0) {
+                int from = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, from, result, n, len);
+                n += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, n, op);
+                pos[0] += op;
+                n += op;
+            }
+        }
+        return result;
+    }
+
+    /** Write instructions to OUT inserting BYTES from START up to END.
+     * @param out ByteArrayOutputStream.
+     * @param bytes byte[].
+     * @param start int.
+     * @param end int. */
+    private static void insert(ByteArrayOutputStream out, byte[] bytes,
+                               int start, int end) {
+        while (start < end) {
+            int n = Math.min(end - start, Byte.MAX_VALUE);
+            out.write(n);
+            out.write(bytes, start, n);
+            start += n;
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of BYTES starting at START.
+     * @param bytes byte[].
+     * @param start int.
+     * @return int return. */
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + bytes[k];
+        }
+        return h;
+    }
+
+    /** Write N to OUT, seven bits to a byte, low bits first, with the
+     *  top bit set on every byte but the last.
+     * @param out ByteArrayOutputStream.
+     * @param n int. */
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Return the number written by writeVarint at POS[0] in BYTES,
+     *  advancing POS[0] past it.
+     * @param bytes byte[].
+     * @param pos int[].
+     * @return int return. */
+    private static int readVarint(byte[] bytes, int[] pos) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = bytes[pos[0]];
+            pos[0] += 1;
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
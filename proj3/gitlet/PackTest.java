@@ -0,0 +1,163 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** Tests of the Pack class and of reading objects through packs.
+ *  @author Simon Zhan
+ */
+public class PackTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return the bytes of S.
+     * @param s String.
+     * @return byte[] return. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return a text of N numbered lines, with line K replaced by EDIT
+     *  if K is positive. */
+    private static String text(int n, int k, String edit) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i <= n; i += 1) {
+            result.append(i == k ? edit : "line number " + i).append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void deltaRoundTrip() {
+        byte[] base = bytes(text(500, 0, null));
+        byte[] target = bytes("new first line\n" + text(500, 250, "edited"));
+        byte[] delta = Pack.delta(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Pack.patch(base, delta));
+        assertArrayEquals(base, Pack.patch(target,
+                Pack.delta(target, base)));
+        assertArrayEquals(new byte[0], Pack.patch(base,
+                Pack.delta(base, new byte[0])));
+        byte[] unrelated = bytes("short");
+        assertArrayEquals(unrelated, Pack.patch(base,
+                Pack.delta(base, unrelated)));
+    }
+
+    @Test
+    public void readThroughPacks() throws IOException {
+        File dir = _dirs.dir();
+        ObjectStore store = new ObjectStore(dir);
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<String> texts = new ArrayList<>();
+        for (int k = 1; k <= 30; k += 1) {
+            String t = text(300, k * 7, "edit " + k);
+            String id = Utils.sha1(t);
+            store.put(id, t);
+            ids.add(id);
+            texts.add(t);
+        }
+        store.repack(ids, null);
+        assertFalse(store.file(ids.get(0)).exists());
+        List<Pack> packs = Pack.list(new File(dir, "pack"));
+        assertEquals(1, packs.size());
+        long packed = 0;
+        for (File f : new File(dir, "pack").listFiles()) {
+            packed += f.length();
+        }
+        assertTrue(packed < texts.get(0).length() * 3);
+        ObjectStore fresh = new ObjectStore(dir);
+        for (int i = 0; i < ids.size(); i += 1) {
+            assertTrue(fresh.contains(ids.get(i)));
+            assertEquals(texts.get(i), fresh.readString(ids.get(i)));
+        }
+        assertFalse(fresh.contains(Utils.sha1("missing")));
+        String extra = Utils.sha1("extra");
+        fresh.put(extra, "extra");
+        fresh.repack(new ArrayList<>(), null);
+        ObjectStore again = new ObjectStore(dir);
+        assertEquals("extra", again.readString(extra));
+        assertEquals(texts.get(29), again.readString(ids.get(29)));
+        assertEquals(1, Pack.list(new File(dir, "pack")).size());
+    }
+
+    @Test
+    public void wholeEntriesAreCopiedDeflated() throws IOException {
+        File dir = _dirs.dir();
+        ObjectStore store = new ObjectStore(dir);
+        String t = text(300, 0, null);
+        String id = Utils.sha1(t);
+        store.put(id, t);
+        store.repack(List.of(id), null);
+        ObjectStore packed = new ObjectStore(dir);
+        Pack pack = Pack.list(new File(dir, "pack")).get(0);
+        assertNotNull(pack.deflated(id));
+        ObjectStore other = _dirs.store();
+        other.copyFrom(packed, id);
+        assertTrue(other.file(id).isFile());
+        assertEquals(t, other.readString(id));
+    }
+
+    @Test
+    public void smallObjectsAreBatchedIntoOnePack() throws IOException {
+        File dir = _dirs.dir();
+        ObjectStore store = new ObjectStore(dir);
+        store.batch();
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 200; i += 1) {
+            String t = text(20, i % 20, "edit " + i);
+            ids.add(Utils.sha1(t));
+            store.put(ids.get(i - 1), t);
+            assertFalse(store.file(ids.get(i - 1)).exists());
+        }
+        String big = text(6000, 0, null);
+        store.put(Utils.sha1(big), big);
+        assertTrue(store.file(Utils.sha1(big)).isFile());
+        assertEquals(text(20, 7, "edit 7"), store.readString(ids.get(6)));
+        store.flush();
+        File packs = new File(dir, "pack");
+        assertEquals(1, Pack.list(packs).size());
+        assertTrue(Pack.list(packs).get(0).isBatch());
+
+        for (int round = 0; round < 32; round += 1) {
+            for (int i = 0; i < 10; i += 1) {
+                String t = text(20, i + 1, "round " + round);
+                ids.add(Utils.sha1(t));
+                store.put(Utils.sha1(t), t);
+            }
+            store.flush();
+        }
+        assertTrue(Pack.list(packs).size() <= 6);
+        ObjectStore reader = new ObjectStore(dir);
+        for (String id : ids) {
+            assertTrue(reader.contains(id));
+        }
+        assertEquals(text(20, 3, "round 31"),
+                reader.readString(Utils.sha1(text(20, 3, "round 31"))));
+    }
+
+    @Test
+    public void sweepDropsDeadBatchedObjects() throws IOException {
+        File dir = _dirs.dir();
+        ObjectStore store = new ObjectStore(dir);
+        store.batch();
+        String live = text(30, 0, null), dead = text(30, 4, "dead");
+        store.put(Utils.sha1(live), live);
+        store.put(Utils.sha1(dead), dead);
+        store.flush();
+        store.sweep(Set.of(Utils.sha1(live)));
+        ObjectStore reader = new ObjectStore(dir);
+        assertEquals(live, reader.readString(Utils.sha1(live)));
+        assertFalse(reader.contains(Utils.sha1(dead)));
+        assertEquals(1, Pack.list(new File(dir, "pack")).size());
+    }
+}
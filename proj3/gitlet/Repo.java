@@ -1,186 +1,755 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.FileOutputStream;
-import java.io.Serializable;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Stack;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /** Repo class used to carry out the whole gitlet system.
  * @author Simon Zhan
  *  */
-public class Repo implements Serializable {
+public class Repo {
 
-
-    /** Keep track of branch name and its pointer. **/
+    /** Directory holding the repository's metadata. **/
+    private final File _dir;
+    /** Store of commits and file contents. **/
+    private final ObjectStore _objects;
+    /** Directory holding one file per branch. **/
+    private final File _refs;
+    /** Staged additions and removals, loaded on first use. **/
+    private Index _index;
+    /** Name of the current branch, loaded on first use. **/
+    private String _head;
+    /** True if the current branch changed during this command. **/
+    private boolean _headchanged;
+    /** Branches read or created during this command, by name. **/
     private HashMap<String, Branch> _branchmap;
-    /** Keep track of commit ID and itself. **/
-    private HashMap<String, Commit> _commitmap;
-    /** Arraylist to keep track of each node. **/
-    private ArrayList<Node> _node;
-    /** Pointer to the farest commit in the branch. **/
-    private Commit _far;
-    /** New directory of files. **/
-    private File gitlet;
-    /** Link between stage file's name and its content. **/
-    private HashMap<String, String> _staging;
-    /** Folder for staging area in .gitlet.**/
-    private File stage;
-    /** Folder content the removing file. **/
-    private File removing;
-    /** Maps between removing files to its toString value. **/
-    private HashSet<String> _toremove;
-    /** Remote directory to store remote data. */
+    /** Names of the branches removed during this command. **/
+    private HashSet<String> _removedbranches;
+    /** Cache of the commits, texts and tree files read. **/
+    private final ObjectCache _cache;
+    /** Parents and generations of every commit, loaded on first use. **/
+    private CommitGraph _graph;
+    /** Changed-path filters of the commits, loaded on first use. **/
+    private ChangedPaths _paths;
+    /** Sorted index of commit IDs, for resolving abbreviations. **/
+    private final IdIndex _ids;
+    /** Index of commit messages, for find. **/
+    private final MessageIndex _messages;
+    /** Journal of this command, once it has begun. **/
+    private Journal _journal;
+    /** Lock of the repository, held if this command may change it. **/
+    private RepoLock _lock;
+    /** True if this is a snapshot, which is only read. **/
+    private boolean _snapshot;
+    /** Length of the commit graph file in this snapshot. **/
+    private long _graphLength;
+    /** Commits created during this command and not yet saved, by ID,
+     *  in the order they were made. **/
+    private LinkedHashMap<String, Commit> _newcommits;
+    /** Remote directory to store remote data, loaded on first use. */
     private HashMap<String, String> _remoteDir;
 
-    /** Constructor for the git system. */
-    public Repo() {
-        File git = new File(".gitlet");
-        gitlet = new File("./.gitlet");
-        boolean t = gitlet.mkdir();
-        stage = new File("./.gitlet/.staging/");
-        boolean s = stage.mkdirs();
+    /** Cache shared by the commands run by this process, or null if
+     *  each command has its own. Objects never change once made, so a
+     *  daemon can share them between the commands it runs. **/
+    private static ObjectCache _warm;
+
+    /** Constructor for the git system kept in DIR. Nothing is read
+     *  until it is needed.
+     * @param dir directory. */
+    Repo(File dir) {
+        this(dir, new ObjectCache());
+    }
+
+    /** Constructor for the git system kept in DIR, keeping what it
+     *  reads in CACHE.
+     * @param dir directory.
+     * @param cache ObjectCache. */
+    Repo(File dir, ObjectCache cache) {
+        _dir = dir;
+        _cache = cache;
+        _objects = new ObjectStore(Utils.join(dir, "objects"), cache);
+        _refs = Utils.join(dir, "refs");
+        _ids = new IdIndex(Utils.join(dir, "commit-index"));
+        _messages = new MessageIndex(Utils.join(dir, "message-index"));
         _branchmap = new HashMap<>();
-        _commitmap = new HashMap<>();
-        _toremove = new HashSet<>();
+        _removedbranches = new HashSet<>();
+        _newcommits = new LinkedHashMap<>();
+    }
+
+    /** Create a new repository in DIR, holding only the initial commit
+     *  on branch master.
+     * @param dir directory.
+     * @return Repo return. */
+    static Repo create(File dir) {
+        Repo git = new Repo(dir);
+        boolean t = dir.mkdirs();
+        boolean r = git._refs.mkdirs();
+        git._objects.create();
+        git._objects.batch();
+        new Tree().write(git._objects);
+        git._index = new Index();
+        git._remoteDir = new HashMap<>();
+        git._graph = CommitGraph.read(Utils.join(dir, "commit-graph"));
         Commit first = new Commit();
-        Branch branch = new Branch(first, "master");
-        branch.changetoCurr();
-        _far = branch.getbyfar();
-        _commitmap.put(first.gethashid(), first);
-        _branchmap.put(branch.getname(), branch);
-        _staging = new HashMap<>();
-        _remoteDir = new HashMap<>();
+        git.addCommit(first);
+        Branch branch = new Branch("master", first.gethashid());
+        git._branchmap.put(branch.getname(), branch);
+        git._head = branch.getname();
+        git._headchanged = true;
+        return git;
     }
 
-    /** Method to save git.
+    /** Method to save git. Only the parts of the repository changed
+     *  by this command are written.
      * @param toSave save*/
     static void save(Repo toSave) {
-        File serialized = new File("./.gitlet/serialized");
-        try {
-            ObjectOutputStream output =
-                new ObjectOutputStream(new FileOutputStream(serialized));
-            output.writeObject(toSave);
-            output.close();
-        } catch (IOException | ClassCastException excp) {
-            int i = 1;
-        }
+        toSave.write();
     }
 
-    /** Method to read git.
+    /** Method to read git, for a command that may change it. Waits
+     *  for the lock of the repository, which is held until the command
+     *  ends, then finishes or undoes any command cut short before.
      * @return Repo git retrieved.*/
     static Repo read() {
-        Repo deserialize = new Repo();
-        File tempfile = new File(".gitlet/serialized");
+        return open(new File(".gitlet"), sharedCache());
+    }
+
+    /** Return the repository in DIR, holding its lock, keeping what it
+     *  reads in CACHE and batching the objects it saves.
+     * @param dir File.
+     * @param cache ObjectCache.
+     * @return Repo return. */
+    private static Repo open(File dir, ObjectCache cache) {
+        RepoLock lock = RepoLock.acquire(dir);
+        Journal.recover(dir, lock);
+        Repo git = new Repo(dir, cache);
+        git._lock = lock;
+        git._objects.batch();
+        return git;
+    }
+
+    /** Return a snapshot of the repository in the current directory,
+     *  for a command that only reads it.
+     * @return Repo return. */
+    static Repo snapshot() {
+        return snapshot(new File(".gitlet"), sharedCache());
+    }
+
+    /** Return a snapshot of the repository in DIR: the repository as
+     *  the last command to commit its journal left it, even while
+     *  another command is changing it. Taking one neither waits for the
+     *  lock nor changes anything, and a snapshot must never be saved.
+     *  The command reading it is noted in .gitlet/readers until it ends,
+     *  so that gc and repack drop no files meanwhile; taking one waits
+     *  only while they do.
+     * @param dir File.
+     * @param cache ObjectCache.
+     * @return Repo return. */
+    static Repo snapshot(File dir, ObjectCache cache) {
+        Repo git = new Repo(dir, cache);
+        git._snapshot = true;
+        RepoLock.share(dir);
+        while (!git.pin()) {
+            git._branchmap.clear();
+        }
+        return git;
+    }
+
+    /** Read HEAD, the branches, the staging area and the remotes, as
+     *  replaced by a committed journal if one is left, and the length
+     *  the commit graph had when the last command to commit began.
+     *  Return false if a command replaced any of those files meanwhile,
+     *  so that they must be read again.
+     * @return boolean return. */
+    @SuppressWarnings("unchecked")
+    private boolean pin() {
+        long sequence = RepoLock.sequence(_dir);
+        _graphLength = Utils.join(_dir, "commit-graph").length();
+        Journal pending = Journal.read(_dir);
+        Map<File, byte[]> changes = pending == null
+            ? Collections.emptyMap() : pending.changes();
+        if (pending != null && !pending.committed()) {
+            _graphLength = Math.min(_graphLength, pending.graphLength());
+        }
+        byte[] head = pinned(Utils.join(_dir, "HEAD"), changes);
+        _head = head == null ? null
+            : new String(head, StandardCharsets.UTF_8).trim();
+        HashSet<String> names = new HashSet<>(Branch.names(_refs));
+        for (File f : changes.keySet()) {
+            if (f.toPath().startsWith(_refs.toPath())) {
+                names.add(_refs.toPath().relativize(f.toPath()).toString());
+            }
+        }
+        for (String name : names) {
+            byte[] contents = pinned(Utils.join(_refs, name), changes);
+            if (contents != null) {
+                _branchmap.put(name, Branch.parse(name, contents));
+            }
+        }
+        byte[] index = pinned(Utils.join(_dir, "index"), changes);
+        _index = index == null ? new Index() : Index.parse(index);
+        byte[] remotes = pinned(Utils.join(_dir, "remotes"), changes);
+        _remoteDir = remotes == null ? new HashMap<>()
+            : Utils.deserialize(remotes, HashMap.class);
+        return head != null && RepoLock.sequence(_dir) == sequence;
+    }
+
+    /** Return the contents of FILE as replaced by CHANGES, or as it
+     *  stands if they leave it alone, or null if it does not exist.
+     * @param file File.
+     * @param changes Map.
+     * @return byte[] return. */
+    private static byte[] pinned(File file, Map<File, byte[]> changes) {
+        if (changes.containsKey(file)) {
+            return changes.get(file);
+        }
         try {
-            ObjectInputStream input =
-                new ObjectInputStream(new FileInputStream(tempfile));
-            deserialize = (Repo) input.readObject();
-            input.close();
-        } catch (IOException | ClassNotFoundException exp) {
-            int i = 1;
-        }
-        return deserialize;
-    }
-
-    /** add method.
-     * @param file content added.*/
-    void add(String file) throws IOException {
-        File tempfile = new File(file);
-        if (!tempfile.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        }
-        Blob temp = new Blob(tempfile);
-        if (_staging.containsKey(file)) {
-            if (_staging.get(file).equals(temp.hashcodereturn())) {
-                if (_far.getstore().get(file) != null
-                        && _far.getstore().get(file).
-                        equals(temp.hashcodereturn())) {
-                    File staging = new File(".gitlet/.staging/"
-                            + temp.hashcodereturn());
-                    if (staging.exists()) {
-                        boolean t = staging.delete();
-                    }
-                    _staging.remove(file);
-                    return;
-                }
+            return file.isFile() ? Utils.readContents(file) : null;
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Return the cache for a command on the current directory: the
+     *  one shared by this process, if it keeps one, or a new one.
+     * @return ObjectCache return. */
+    private static ObjectCache sharedCache() {
+        return _warm != null ? _warm : new ObjectCache();
+    }
+
+    /** Keep the commits, texts and tree files read by each command for
+     *  the next ones run by this process. Branches, the staging area
+     *  and the commit graph are still read afresh by every command,
+     *  since other processes may change them. */
+    static void keepWarm() {
+        _warm = new ObjectCache();
+    }
+
+    /** Write out everything changed by this command, under a journal:
+     *  first the new commits and the files derived from the commit
+     *  graph, then the small objects of the command, packed together
+     *  and synced once, and then, once the other files written are
+     *  synced, the branches, HEAD, the staging area and the remotes. */
+    private void write() {
+        boolean added = !_newcommits.isEmpty();
+        boolean derived = added || _journal != null;
+        boolean changed = added || _journal != null || _headchanged
+            || !_removedbranches.isEmpty() || _index != null
+            || _remoteDir != null;
+        for (Branch branch : _branchmap.values()) {
+            changed |= branch.ischanged();
+        }
+        if (!changed) {
+            return;
+        }
+        Journal journal = journal();
+        for (Commit commit : _newcommits.values()) {
+            _objects.putCommit(commit);
+        }
+        if (added && !_ids.exists()) {
+            _ids.replace(commitIds());
+        } else {
+            _ids.add(_newcommits.keySet());
+        }
+        if (added) {
+            if (_messages.size() + _newcommits.size() == graph().size()) {
+                _messages.add(new ArrayList<>(_newcommits.values()),
+                        this::getCommit);
+            } else {
+                _messages.replace(commitIds(), this::getCommit);
             }
-            if (_far.getstore().get(file) != null
-                    && _far.getstore().get(file).
-                    equals(temp.hashcodereturn())) {
-                File tempstaging = new File(".gitlet/.staging/"
-                        + temp.hashcodereturn());
-                if (tempstaging.exists()) {
-                    boolean a = tempstaging.delete();
-                }
-                _staging.remove(file);
-            }
-            String oldhashID = _staging.get(file);
-            File oldF = new File(".gitlet/.staging/" + oldhashID);
-            boolean b = oldF.delete();
-            _staging.remove(file);
-            File newF = new File(".gitlet/.staging/"
-                    + temp.hashcodereturn());
-            boolean c = newF.createNewFile();
-            Utils.writeContents(newF, temp.contentinstring());
-            _staging.put(file, temp.hashcodereturn());
+        }
+        _newcommits.clear();
+        if (_graph != null) {
+            _graph.write();
+        }
+        if (added) {
+            filterPaths();
+        }
+        if (!RepoLock.excluding(_dir, false, _objects::flush)) {
+            _objects.flush(false);
+        }
+        journal.written(_objects.unsynced());
+        if (derived) {
+            for (String name : new String[] {"commit-graph", "commit-index",
+                                             "message-index", "changed-paths"}) {
+                journal.written(Utils.join(_dir, name));
+            }
+        }
+        for (String name : _removedbranches) {
+            Branch.delete(_refs, name, journal);
+        }
+        for (Branch branch : _branchmap.values()) {
+            if (branch.ischanged()) {
+                branch.write(_refs, journal);
+            }
+        }
+        if (_headchanged) {
+            journal.replace(Utils.join(_dir, "HEAD"),
+                    _head.getBytes(StandardCharsets.UTF_8));
+            _headchanged = false;
+        }
+        if (_index != null) {
+            _index.refresh();
+            _index.write(Utils.join(_dir, "index"), journal);
+        }
+        if (_remoteDir != null) {
+            journal.replace(Utils.join(_dir, "remotes"),
+                    Utils.serialize(_remoteDir));
+        }
+        journal.commit();
+        _journal = null;
+    }
+
+    /** Return the journal of this command, begun on first use. A command
+     *  must begin it before changing any file of the repository other
+     *  than objects.
+     * @return Journal return. */
+    private Journal journal() {
+        if (_journal == null) {
+            _journal = new Journal(_dir, _lock);
+            _journal.begin();
+        }
+        return _journal;
+    }
+
+    /** Return the files staged for addition.
+     * @return HashMap return. */
+    HashMap<String, String> staged() {
+        return index().staged();
+    }
+
+    /** Return the files staged for removal.
+     * @return HashSet return. */
+    HashSet<String> removed() {
+        return index().removed();
+    }
+
+    /** Return the staging area, reading it if needed.
+     * @return Index return. */
+    private Index index() {
+        if (_index == null) {
+            _index = Index.read(Utils.join(_dir, "index"));
+        }
+        return _index;
+    }
+
+    /** Return the map from remote names to their directories.
+     * @return HashMap return. */
+    @SuppressWarnings("unchecked")
+    private HashMap<String, String> remotes() {
+        if (_remoteDir == null) {
+            File f = Utils.join(_dir, "remotes");
+            if (f.exists()) {
+                _remoteDir = Utils.readObject(f, HashMap.class);
+            } else {
+                _remoteDir = new HashMap<>();
+            }
+        }
+        return _remoteDir;
+    }
+
+    /** Return the commit with the given full ID, or null.
+     * @param id string.
+     * @return Commit return. */
+    Commit getCommit(String id) {
+        Commit result = _newcommits.get(id);
+        return result != null ? result : _objects.getCommit(id);
+    }
+
+    /** Return true if the commit with the given full ID exists.
+     * @param id string.
+     * @return boolean return. */
+    boolean hasCommit(String id) {
+        return graph().contains(id);
+    }
+
+    /** Record a new commit, to be written when the repository is saved.
+     *  Its parents must already be in the repository.
+     * @param commit Commit. */
+    private void addCommit(Commit commit) {
+        if (!hasCommit(commit.gethashid())) {
+            graph().add(commit.gethashid(), commit.getparent(),
+                    commit.getparent2());
+            _newcommits.put(commit.gethashid(), commit);
+        }
+    }
+
+    /** Return the commit graph, reading it if needed.
+     * @return CommitGraph return. */
+    CommitGraph graph() {
+        if (_graph == null) {
+            _graph = _snapshot
+                ? CommitGraph.read(Utils.join(_dir, "commit-graph"),
+                                   _graphLength)
+                : CommitGraph.read(Utils.join(_dir, "commit-graph"));
+        }
+        return _graph;
+    }
+
+    /** Return the changed-path filters of the commits, reading them if
+     *  needed.
+     * @return ChangedPaths return. */
+    ChangedPaths changedPaths() {
+        if (_paths == null) {
+            _paths = ChangedPaths.read(Utils.join(_dir, "changed-paths"));
+        }
+        return _paths;
+    }
+
+    /** Add the changed-path filters of the commits in the graph that
+     *  have none yet, and save them. */
+    private void filterPaths() {
+        ChangedPaths paths = changedPaths();
+        for (int pos = paths.size(); pos < graph().size(); pos += 1) {
+            int[] parents = graph().parents(pos);
+            String from = parents.length == 0 ? null
+                : getCommit(graph().id(parents[0])).gettree();
+            HashMap<String, String> changed = new HashMap<>();
+            Tree.diff(_objects, from, getCommit(graph().id(pos)).gettree(),
+                      "", changed);
+            paths.add(changed.keySet());
+        }
+        paths.write();
+    }
+
+    /** Return the IDs of every commit in the repository, parents before
+     *  children.
+     * @return List return. */
+    List<String> commitIds() {
+        return graph().ids();
+    }
+
+    /** Return the full ID of the commit whose ID starts with PREFIX, or
+     *  null if there is none. Exits if more than one commit matches.
+     * @param prefix string.
+     * @return String return. */
+    String resolve(String prefix) {
+        String abbrev = prefix.toLowerCase();
+        if (!_ids.exists()) {
+            _ids.replace(commitIds());
+        }
+        List<String> found = new ArrayList<>(_ids.lookup(abbrev, 2));
+        for (String id : _newcommits.keySet()) {
+            if (id.startsWith(abbrev) && found.size() < 2) {
+                found.add(id);
+            }
+        }
+        if (found.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous.");
+            throw new GitletException();
+        }
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /** Return the blob for the working file NAME. Its contents are only
+     *  hashed if the index cannot vouch for them.
+     * @param name string.
+     * @return Blob return. */
+    Blob blob(String name) {
+        File file = new File(name);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = index().cachedHash(name, attrs);
+        if (id == null) {
+            id = Utils.sha1(file);
+            index().record(name, attrs, id);
+        }
+        return new Blob(file, id);
+    }
+
+    /** Write the object ID to the working file NAME, and remember that
+     *  the file now has those contents.
+     * @param id string.
+     * @param name string. */
+    void writeWorkingFile(String id, String name) {
+        File file = new File(name);
+        if (file.getParentFile() != null) {
+            boolean a = file.getParentFile().mkdirs();
+        }
+        _objects.copyTo(id, file);
+        try {
+            index().record(name, Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class), id);
+        } catch (IOException excp) {
+            index().forget(name);
+        }
+    }
+
+    /** Return the files tracked by COMMIT, mapped to the ids of their
+     *  contents, kept in the cache. The map must not be changed.
+     * @param commit Commit.
+     * @return HashMap return. */
+    @SuppressWarnings("unchecked")
+    HashMap<String, String> files(Commit commit) {
+        HashMap<String, String> result =
+            _cache.get(HashMap.class, commit.gettree());
+        if (result == null) {
+            result = new HashMap<>();
+            Tree.flatten(_objects, commit.gettree(), "", result);
+            long size = ObjectCache.OVERHEAD;
+            for (String name : result.keySet()) {
+                size += ObjectCache.sizeOf(name)
+                    + ObjectCache.sizeOf(commit.gettree());
+            }
+            _cache.put(HashMap.class, commit.gettree(), result, size);
+        }
+        return result;
+    }
+
+    /** Return the id of the tree of FAR with the staged additions and
+     *  removals applied. The tree kept up to date in the index is used
+     *  when it was built on FAR's tree; otherwise it is made again from
+     *  the staged files, writing only the trees along changed paths.
+     * @param far Commit.
+     * @return String return. */
+    String stagedTree(Commit far) {
+        String result = index().tree(far.gettree());
+        if (result == null) {
+            HashMap<String, String> changes = new HashMap<>(staged());
+            for (String name : removed()) {
+                changes.put(name, null);
+            }
+            result = Tree.update(_objects, far.gettree(), changes);
+            index().setTree(far.gettree(), result);
+        }
+        return result;
+    }
+
+    /** Bring the staged tree up to date after NAME was staged with
+     *  contents ID, or staged for removal if ID is null. Only the trees
+     *  along NAME's path are rewritten.
+     * @param name String.
+     * @param id String. */
+    private void restage(String name, String id) {
+        restage(Collections.singletonMap(name, id));
+    }
+
+    /** Bring the staged tree up to date after each path in CHANGES was
+     *  staged with the contents it maps to, or for removal if it maps
+     *  to null.
+     * @param changes Map. */
+    private void restage(Map<String, String> changes) {
+        String base = head().gettree();
+        String tree = index().tree(base);
+        if (tree == null) {
+            stagedTree(head());
         } else {
-            if (_far.getstore().get(file) != null
-                    && _far.getstore().get(file).
-                    equals(temp.hashcodereturn())) {
-                File f = new File(".gitlet/.staging/" + temp.hashcodereturn());
-                if (f.exists()) {
-                    boolean d = f.delete();
+            index().setTree(base, Tree.update(_objects, tree, changes));
+        }
+    }
+
+    /** Return the commit at the head of the current branch.
+     * @return Commit return. */
+    Commit head() {
+        return getCommit(getBranch().getbyfar());
+    }
+
+    /** add method: stage every file named by PATHS. Each path may
+     *  name a file, a directory, whose files are all added, or a glob
+     *  pattern matched against the paths of working files. The files
+     *  are hashed and saved by a pool of workers, and the staging area
+     *  is only changed once all of them have succeeded.
+     * @param paths content added.*/
+    void add(String... paths) throws IOException {
+        List<String> names = expand(paths);
+        HashMap<String, String> tracked = files(head());
+        index();
+        ArrayList<Hashed> hashed = new ArrayList<>();
+        if (names.size() == 1) {
+            hashed.add(hash(names.get(0), tracked));
+        } else {
+            int workers = Math.min(names.size(),
+                    Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(workers);
+            try {
+                ArrayList<Future<Hashed>> results = new ArrayList<>();
+                for (String name : names) {
+                    results.add(pool.submit(() -> hash(name, tracked)));
+                }
+                for (Future<Hashed> result : results) {
+                    hashed.add(result.get());
                 }
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        HashMap<String, String> changes = new HashMap<>();
+        for (Hashed h : hashed) {
+            if (h._fresh) {
+                index().record(h._name, h._attrs, h._id);
+            }
+            if (h._id.equals(tracked.get(h._name))) {
+                staged().remove(h._name);
             } else {
-                File tempstaging3 = new File(".gitlet/.staging/"
-                        + temp.hashcodereturn());
-                boolean e = tempstaging3.createNewFile();
-                Utils.writeContents(tempstaging3, temp.contentinstring());
-                _staging.put(file, temp.hashcodereturn());
+                staged().put(h._name, h._id);
             }
+            removed().remove(h._name);
+            changes.put(h._name, h._id);
+        }
+        restage(changes);
+    }
+
+    /** A working file whose contents have been hashed. */
+    private static class Hashed {
+        /** Name of the file. **/
+        private final String _name;
+        /** Attributes of the file when it was hashed. **/
+        private final BasicFileAttributes _attrs;
+        /** ID of its contents. **/
+        private final String _id;
+        /** True if the contents were read rather than taken from the
+         *  index. **/
+        private final boolean _fresh;
+
+        /** Constructor for the file NAME, with attributes ATTRS and
+         *  contents ID, which were read if FRESH.
+         * @param name String.
+         * @param attrs BasicFileAttributes.
+         * @param id String.
+         * @param fresh boolean. */
+        Hashed(String name, BasicFileAttributes attrs, String id,
+               boolean fresh) {
+            _name = name;
+            _attrs = attrs;
+            _id = id;
+            _fresh = fresh;
+        }
+    }
+
+    /** Hash the working file NAME, unless the index vouches for its
+     *  contents, and save them unless they are those in TRACKED. This
+     *  only reads the index, so it may run in several threads at once.
+     * @param name String.
+     * @param tracked HashMap.
+     * @return Hashed return. */
+    private Hashed hash(String name, HashMap<String, String> tracked) {
+        File file = new File(name);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        if (_toremove.contains(file)) {
-            _toremove.remove(file);
+        String id = index().cachedHash(name, attrs);
+        boolean fresh = id == null;
+        if (fresh) {
+            id = Utils.sha1(file);
+        }
+        if (!id.equals(tracked.get(name))) {
+            _objects.putFile(id, file);
+        }
+        return new Hashed(name, attrs, id, fresh);
+    }
+
+    /** Return the names of the working files named by PATHS, as for
+     *  add, without repeats. Exits if a path names nothing.
+     * @param paths String[].
+     * @return List return. */
+    private List<String> expand(String... paths) throws IOException {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isFile()) {
+                result.add(path);
+                continue;
+            }
+            Path root = Paths.get(".");
+            PathMatcher glob = null;
+            if (file.isDirectory()) {
+                root = file.toPath();
+            } else if (path.matches(".*[*?\\[{].*")) {
+                glob = FileSystems.getDefault().getPathMatcher(
+                        "glob:" + path);
+            } else {
+                System.out.println("File does not exist.");
+                throw new GitletException();
+            }
+            int before = result.size();
+            PathMatcher matcher = glob;
+            Path meta = _dir.toPath().normalize();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                        Path d, BasicFileAttributes attrs) {
+                    return d.normalize().equals(meta)
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(
+                        Path f, BasicFileAttributes attrs) {
+                    Path name = f.normalize();
+                    if (attrs.isRegularFile()
+                            && (matcher == null || matcher.matches(name))) {
+                        result.add(name.toString().
+                                replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            if (glob != null && result.size() == before) {
+                System.out.println("File does not exist.");
+                throw new GitletException();
+            }
         }
+        return new ArrayList<>(result);
     }
 
     /** Commit the changes in the file.
      * @param msg message.*/
     void commit(String msg) throws IOException {
-        if (_staging.isEmpty() && _toremove.isEmpty()) {
+        if (staged().isEmpty() && removed().isEmpty()) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            HashMap<String, String> tracking = new HashMap<String, String>();
-            tracking.putAll(_staging);
-            for (String tem : _far.getstore().keySet()) {
-                if (!tracking.containsKey(tem)) {
-                    String contents = _far.getstore().get(tem);
-                    tracking.put(tem, contents);
-                }
-                if (_toremove.contains(tem)) {
-                    tracking.remove(tem);
-                }
-            }
+            Commit far = head();
+            String tracking = stagedTree(far);
             Date now = new Date();
-            Commit commit = new Commit(msg, _far.gethashid(), tracking, now);
-            _far.addchild(commit.gethashid());
-            _commitmap.put(commit.gethashid(), commit);
-            getBranch().changebyfar(commit);
-            _far = commit;
-            _staging.clear();
-            _toremove.clear();
+            Commit commit = new Commit(msg, far.gethashid(), tracking, now);
+            addCommit(commit);
+            getBranch().changebyfar(commit.gethashid());
+            index().clear();
         }
     }
 
@@ -188,25 +757,26 @@ public class Repo implements Serializable {
      * @param filename filename. */
     void rm(String filename) {
         File remove = new File(filename);
-
+        HashMap<String, String> tracked = files(head());
         if (!remove.exists()) {
-            if (_far.getstore().containsKey(filename)) {
-                String contents = _far.getcontent(filename);
-                _toremove.add(filename);
+            if (tracked.containsKey(filename)) {
+                removed().add(filename);
+                restage(filename, null);
                 return;
             }
         }
-        Blob toremove = new Blob(remove);
-        if (_staging.containsKey(filename)) {
-            _staging.remove(filename);
-            if (_far.getstore().containsKey(filename)) {
-                _toremove.add(filename);
+        if (staged().containsKey(filename)) {
+            staged().remove(filename);
+            if (tracked.containsKey(filename)) {
+                removed().add(filename);
             }
-        } else if (_far.getstore().containsKey(filename)) {
+            restage(filename, null);
+        } else if (tracked.containsKey(filename)) {
             if (remove.exists()) {
                 remove.delete();
             }
-            _toremove.add(filename);
+            removed().add(filename);
+            restage(filename, null);
         } else {
             System.out.println("No reason to remove the file.");
         }
@@ -214,14 +784,56 @@ public class Repo implements Serializable {
 
 
     /** Get the current branch.
-     * @retrun Branch branch return. */
+     * @return Branch branch return. */
     Branch getBranch() {
-        for (String key : _branchmap.keySet()) {
-            if (_branchmap.get(key).getcurrent()) {
-                return _branchmap.get(key);
+        if (_head == null) {
+            _head = Utils.readContentsAsString(
+                    Utils.join(_dir, "HEAD")).trim();
+        }
+        return getBranchNamed(_head);
+    }
+
+    /** Return the branch with the given name, or null if there is none.
+     * @param name string.
+     * @return Branch return. */
+    Branch getBranchNamed(String name) {
+        if (_removedbranches.contains(name)) {
+            return null;
+        }
+        Branch result = _branchmap.get(name);
+        if (result == null && !_snapshot) {
+            result = Branch.read(_refs, name);
+            if (result != null) {
+                _branchmap.put(name, result);
             }
         }
-        return null;
+        return result;
+    }
+
+    /** Create or replace the branch NAME, pointing at commit HEAD.
+     *  Exits if NAME is not a valid branch name, or if its file would
+     *  lie inside another branch's, or hold one.
+     * @param name string.
+     * @param head string. */
+    void putBranch(String name, String head) {
+        if (!Branch.valid(name) || Branch.clashes(name, branchNames())) {
+            throw Utils.error("Invalid branch name.");
+        }
+        _removedbranches.remove(name);
+        _branchmap.put(name, new Branch(name, head));
+    }
+
+    /** Return the names of all branches, in sorted order.
+     * @return ArrayList return. */
+    ArrayList<String> branchNames() {
+        HashSet<String> names = new HashSet<>(_branchmap.keySet());
+        if (!_snapshot) {
+            names.addAll(Branch.names(_refs));
+        }
+        names.removeAll(_removedbranches);
+        ArrayList<String> result = new ArrayList<>(names);
+        Collections.sort(result);
+        return result;
     }
 
     /** Check out command. Take current file to the working directory.
@@ -229,27 +841,12 @@ public class Repo implements Serializable {
      * New version is not in staging anymore.
      * @param filename filename. */
     void checkoutfile(String filename) {
-        if (!_far.getstore().containsKey(filename)) {
+        Commit far = head();
+        if (!files(far).containsKey(filename)) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            File file = new File(filename);
-            if (file.exists()) {
-                String contents = _far.getcontent(filename);
-                File file1 = new File(".gitlet/.staging/" + contents);
-                Blob temp1 = new Blob(file1);
-                Utils.writeContents(file, temp1.contentinstring());
-            } else {
-                try {
-                    boolean a = file.createNewFile();
-                    String contents = _far.getcontent(filename);
-                    File file2 = new File(".gitlet/.staging/" + contents);
-                    Blob temp = new Blob(file2);
-                    Utils.writeContents(file, temp.contentinstring());
-                } catch (IOException e) {
-                    return;
-                }
-            }
+            writeWorkingFile(files(far).get(filename), filename);
         }
     }
 
@@ -260,34 +857,16 @@ public class Repo implements Serializable {
      * @param filename filename.
      * @param iD ID*/
     void checkoutID(String iD, String filename) {
-        String abrev = "empty";
-        for (String id : _commitmap.keySet()) {
-            if (id.startsWith(iD)) {
-                abrev = id;
-            }
-        }
-        if (!_commitmap.containsKey(abrev)) {
+        String abrev = resolve(iD);
+        if (abrev == null) {
             System.out.println("No commit with that id exists.");
-            System.exit(0);
-        } else if (!_commitmap.get(abrev).getstore().containsKey(filename)) {
+            throw new GitletException();
+        } else if (!files(getCommit(abrev)).containsKey(filename)) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            String hashcode = _commitmap.get(abrev).getcontent(filename);
-            File tempfile = new File(".gitlet/.staging/" + hashcode);
-            Blob temp = new Blob(tempfile);
-            File file = new File(filename);
-            if (file.exists()) {
-                Utils.writeContents(file, temp.contentinstring());
-            } else {
-                try {
-                    boolean a = file.createNewFile();
-
-                } catch (IOException e) {
-                    System.exit(0);
-                }
-                Utils.writeContents(file, temp.contentinstring());
-            }
+            String hashcode = files(getCommit(abrev)).get(filename);
+            writeWorkingFile(hashcode, filename);
         }
     }
 
@@ -295,78 +874,223 @@ public class Repo implements Serializable {
      * Take the files into the working directory.
      * @param branchname branchname. */
     void checkoutbranch(String branchname) {
-        if (!_branchmap.containsKey(branchname)) {
+        Branch target = getBranchNamed(branchname);
+        if (target == null) {
             System.out.println("No such branch exists.");
-            System.exit(0);
-        } else if (_branchmap.get(branchname).getcurrent()) {
+            throw new GitletException();
+        } else if (target == getBranch()) {
             System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            Commit branchHead = _branchmap.get(branchname).getbyfar();
-            HashMap<String, String> currTracking = _far.getstore();
-            HashMap<String, String> branchTracking = branchHead.getstore();
-            for (String temp : branchTracking.keySet()) {
-                if (!currTracking.containsKey(temp)) {
-                    File currFile = new File(temp);
-                    if (currFile.exists()) {
-                        System.out.println("There is an untracked "
-                                + "file in the way; "
-                                + "delete it or add it first.");
-                        System.exit(0);
-                    }
+            switchTo(getCommit(target.getbyfar()));
+            _head = branchname;
+            _headchanged = true;
+            staged().clear();
+            index().setTree(null, null);
+        }
+    }
+
+    /** Make the working files tracked by the head commit into those of
+     *  TARGET. Only the paths that differ between the two trees, or
+     *  whose working files no longer have their committed contents,
+     *  are touched. Exits without changing anything if an untracked
+     *  file would be overwritten. Files are written by a pool of
+     *  workers.
+     * @param target Commit. */
+    private void switchTo(Commit target) {
+        Commit current = head();
+        HashMap<String, String> tracked = files(current);
+        HashMap<String, String> wanted = files(target);
+        for (String name : wanted.keySet()) {
+            if (!tracked.containsKey(name) && new File(name).exists()) {
+                System.out.println("There is an untracked file in the way; "
+                        + "delete it or add it first.");
+                throw new GitletException();
+            }
+        }
+        HashMap<String, String> changes = new HashMap<>();
+        Tree.diff(_objects, current.gettree(), target.gettree(), "",
+                changes);
+        for (Map.Entry<String, String> e : wanted.entrySet()) {
+            String name = e.getKey();
+            if (!changes.containsKey(name)
+                    && !(new File(name).isFile()
+                         && blob(name).hashcodereturn().
+                                equals(e.getValue()))) {
+                changes.put(name, e.getValue());
+            }
+        }
+        ArrayList<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                File gone = new File(e.getKey());
+                boolean a = gone.delete();
+                index().forget(e.getKey());
+                File parent = gone.getParentFile();
+                while (parent != null && parent.delete()) {
+                    parent = parent.getParentFile();
                 }
-                checkoutID(branchHead.gethashid(), temp);
+            } else {
+                writes.add(e.getKey());
             }
-            for (String file : currTracking.keySet()) {
-                if (!branchTracking.containsKey(file)) {
-                    File cFile = new File(file);
-                    if (cFile.exists()) {
-                        boolean t = cFile.delete();
+        }
+        writeWorkingFiles(changes, writes);
+    }
+
+    /** Write the working files NAMES, each with the contents that
+     *  CONTENTS maps it to, on a pool of workers.
+     * @param contents Map.
+     * @param names List. */
+    private void writeWorkingFiles(Map<String, String> contents,
+                                   List<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        int workers = Math.min(names.size(),
+                Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            ArrayList<Future<BasicFileAttributes>> results =
+                new ArrayList<>();
+            for (String name : names) {
+                results.add(pool.submit(() -> {
+                    File file = new File(name);
+                    File parent = file.getParentFile();
+                    if (parent != null) {
+                        boolean a = parent.mkdirs();
                     }
-                }
+                    _objects.copyTo(contents.get(name), file);
+                    return Files.readAttributes(file.toPath(),
+                            BasicFileAttributes.class);
+                }));
+            }
+            for (int i = 0; i < names.size(); i += 1) {
+                index().record(names.get(i), results.get(i).get(),
+                        contents.get(names.get(i)));
             }
-            getBranch().changetoPast();
-            _branchmap.get(branchname).changetoCurr();
-            _far = branchHead;
-            _staging.clear();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    /** Display information about each commit. **/
-    void log() {
-        Commit temp = _far;
-        while (temp != null && !temp.isParent()) {
-            System.out.println("===");
-            System.out.println("commit " + temp.gethashid());
-            if (temp.getParents().size() == 2) {
-                System.out.println("Merge: " + temp.getparent().substring(0, 7)
-                        + " " + temp.getparent2().substring(0, 7));
+    /** Display information about each commit on the current branch,
+     *  following first parents from the head: LIMIT of them, after
+     *  skipping SKIP, one line each if COMPACT. If PATH is not null,
+     *  only the commits that changed the file or directory PATH count.
+     *  The changed-path filters rule out most of the others without
+     *  reading their commits or trees.
+     * @param skip int.
+     * @param limit int.
+     * @param compact boolean.
+     * @param path String. */
+    void log(int skip, int limit, boolean compact, String path) {
+        PrintWriter out = output();
+        int pos = graph().position(getBranch().getbyfar());
+        for (int i = 0, n = 0; pos != CommitGraph.NONE && n < limit;) {
+            int[] parents = graph().parents(pos);
+            int parent = parents.length == 0 ? CommitGraph.NONE : parents[0];
+            if (path == null || changed(pos, parent, path)) {
+                if (i >= skip) {
+                    if (n > 0 && !compact) {
+                        out.println();
+                    }
+                    print(out, getCommit(graph().id(pos)), compact, true);
+                    n += 1;
+                }
+                i += 1;
             }
-            System.out.println(temp.gettime());
-            System.out.println(temp.getmessage());
-            System.out.println();
-            temp = _commitmap.get(temp.getparent());
+            pos = parent;
         }
-        System.out.println("===");
-        System.out.println("commit " + temp.gethashid());
-        if (temp.getParents().size() == 2) {
-            System.out.println("Merge: " + temp.getparent().substring(0, 7)
-                    + " " + temp.getparent2().substring(0, 7));
+        out.flush();
+    }
+
+    /** Return true if the commit at position POS changed PATH from its
+     *  first parent, at position PARENT.
+     * @param pos int.
+     * @param parent int.
+     * @param path String.
+     * @return boolean return. */
+    private boolean changed(int pos, int parent, String path) {
+        if (!changedPaths().mayHaveChanged(pos, path)) {
+            return false;
         }
-        System.out.println(temp.gettime());
-        System.out.println(temp.getmessage());
+        String before = parent == CommitGraph.NONE ? null
+            : Tree.lookup(_objects, getCommit(graph().id(parent)).gettree(),
+                          path);
+        String after = Tree.lookup(_objects,
+                getCommit(graph().id(pos)).gettree(), path);
+        return after == null ? before != null : !after.equals(before);
     }
 
-    /** Global log command to printout all commits. **/
-    void globalLog() {
-        for (String i : _commitmap.keySet()) {
-            Commit temp = _commitmap.get(i);
-            System.out.println("===");
-            System.out.println("commit " + temp.gethashid());
-            System.out.println(temp.gettime());
-            System.out.println(temp.getmessage());
-            System.out.println();
+    /** Global log command to printout all commits, in the order they
+     *  were made: LIMIT of them, after skipping SKIP, one line each if
+     *  COMPACT.
+     * @param skip int.
+     * @param limit int.
+     * @param compact boolean. */
+    void globalLog(int skip, int limit, boolean compact) {
+        PrintWriter out = output();
+        List<String> ids = commitIds();
+        int end = (int) Math.min(ids.size(), (long) skip + limit);
+        for (int i = skip; i < end; i += 1) {
+            print(out, getCommit(ids.get(i)), compact, false);
+            if (!compact) {
+                out.println();
+            }
         }
+        out.flush();
+    }
+
+    /** Return a buffered writer onto the standard output. It must be
+     *  flushed when done.
+     * @return PrintWriter return. */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
+    }
+
+    /** Print COMMIT to OUT as log shows it, with the parents of merges
+     *  if MERGES, or, if COMPACT, as one line
+     *  holding its id, its parents separated by commas or - if it has
+     *  none, its time in milliseconds and its message, with newlines
+     *  and backslashes escaped.
+     * @param out PrintWriter.
+     * @param commit Commit.
+     * @param compact boolean.
+     * @param merges boolean. */
+    private static void print(PrintWriter out, Commit commit,
+                              boolean compact, boolean merges) {
+        if (compact) {
+            StringBuilder parents = new StringBuilder();
+            for (String p : commit.getParents()) {
+                if (!p.isEmpty()) {
+                    parents.append(parents.length() == 0 ? "" : ",")
+                        .append(p);
+                }
+            }
+            out.print(commit.gethashid());
+            out.print(' ');
+            out.print(parents.length() == 0 ? "-" : parents);
+            out.print(' ');
+            out.print(commit.getmillis());
+            out.print(' ');
+            out.println(commit.getmessage().replace("\\", "\\\\")
+                        .replace("\n", "\\n").replace("\r", "\\r"));
+            return;
+        }
+        out.println("===");
+        out.print("commit ");
+        out.println(commit.gethashid());
+        if (merges && commit.getParents().size() == 2) {
+            out.print("Merge: ");
+            out.print(commit.getparent().substring(0, 7));
+            out.print(' ');
+            out.println(commit.getparent2().substring(0, 7));
+        }
+        out.println(commit.gettime());
+        out.println(commit.getmessage());
     }
 
     /** branch method to create new branch in current
@@ -374,91 +1098,72 @@ public class Repo implements Serializable {
      * Set the current branch to the head note commit.
      * @param name name.*/
     void branch(String name) {
-        if (_branchmap.containsKey(name)) {
+        if (getBranchNamed(name) != null) {
             System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            Branch temp = new Branch(_far, name);
-            _branchmap.put(name, temp);
+            putBranch(name, getBranch().getbyfar());
         }
     }
 
     /** Delete the current branch, without deleting all the commits under it.
      * @param name name.*/
     public void rmBranch(String name) {
-        if (_branchmap.containsKey(name)) {
-            Branch delete = _branchmap.get(name);
-            if (delete.equals(getBranch())) {
+        Branch delete = getBranchNamed(name);
+        if (delete != null) {
+            if (delete == getBranch()) {
                 System.out.println("Cannot remove the current branch.");
-                System.exit(0);
+                throw new GitletException();
             } else {
                 _branchmap.remove(name);
-                delete.remove();
+                _removedbranches.add(name);
             }
         } else {
             System.out.println("A branch  with that name does not exist.");
-            System.exit(0);
+            throw new GitletException();
         }
     }
 
     /** Reset the whole Git version controlled system.
      * @param commit commit.*/
     public void reset(String commit) {
-        String abrev = "empty";
-        for (String iD : _commitmap.keySet()) {
-            if (iD.startsWith(commit)) {
-                abrev = iD;
-            }
-        }
-        if (!_commitmap.containsKey(abrev)) {
+        String abrev = resolve(commit);
+        if (abrev == null) {
             System.out.println("No commit with that id exists.");
-            System.exit(0);
+            throw new GitletException();
         }
-        HashMap<String, String> commits = _commitmap.get(abrev).getstore();
-        File allfile = new File("./");
-        File[] allFiles = allfile.listFiles();
+        switchTo(getCommit(abrev));
+        getBranch().changebyfar(abrev);
+        index().clear();
+    }
 
-        for (File file : allFiles) {
-            String name = file.getName();
-            if (!_far.getstore().containsKey(name)
-                    && commits.containsKey(name)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it or add it first.");
-                System.exit(0);
+    /** Print the ids of the commits whose message is MSG or, if WORD,
+     *  whose messages contain the word MSG, or if also PREFIX, a word
+     *  starting with MSG. They are answered from the message index,
+     *  which is never written here: commits it holds beyond the graph
+     *  are left out, and the messages of commits it lacks are read.
+     * @param msg message.
+     * @param word boolean.
+     * @param prefix boolean. */
+    void find(String msg, boolean word, boolean prefix) {
+        List<String> found = new ArrayList<>();
+        for (String id : word ? _messages.words(msg, prefix, this::getCommit)
+                 : _messages.exact(msg, this::getCommit)) {
+            if (hasCommit(id)) {
+                found.add(id);
             }
         }
-        for (String name : commits.keySet()) {
-            checkoutID(abrev, name);
-        }
-        for (String name : _far.getstore().keySet()) {
-            if (!commits.containsKey(name)) {
-                File tmp = new File(name);
-                if (tmp.exists()) {
-                    boolean a = tmp.delete();
-                }
+        for (int pos = _messages.size(); pos < graph().size(); pos += 1) {
+            String message = getCommit(graph().id(pos)).getmessage();
+            if (word ? MessageIndex.contains(message, msg, prefix)
+                    : message.equals(msg)) {
+                found.add(graph().id(pos));
             }
         }
-        getBranch().changebyfar(_commitmap.get(abrev));
-        _far = getBranch().getbyfar();
-        _staging.clear();
-        _toremove.clear();
-    }
-
-    /** Find all the commits with given messages.
-     * @param msg message. */
-    void find(String msg) {
-        if (_commitmap.isEmpty()) {
-            System.out.println("Found no commit with that message.");
-        }
-        boolean flag = false;
-        for (String temp : _commitmap.keySet()) {
-            Commit check = _commitmap.get(temp);
-            if (msg.equals(check.getmessage())) {
-                System.out.println(temp);
-                flag = true;
-            }
+        for (String id : found) {
+            System.out.println(id);
         }
-        if (!flag) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -469,18 +1174,19 @@ public class Repo implements Serializable {
     String statushelper1(File file) {
         String state = "";
         String name = file.getName();
-        if (_far.getstore().containsKey(name)) {
-            Blob temp = new Blob(file);
-            if (!_far.getcontent(temp.namereturn()).
+        Commit far = head();
+        if (files(far).containsKey(name)) {
+            Blob temp = blob(name);
+            if (!files(far).get(temp.namereturn()).
                     equals(temp.hashcodereturn())) {
-                if (!_staging.containsKey(temp.namereturn())) {
+                if (!staged().containsKey(temp.namereturn())) {
                     state = "modified";
                 }
             }
         }
-        if (_staging.containsKey(name)) {
-            Blob temp = new Blob(file);
-            if (!_staging.get(temp.namereturn()).
+        if (staged().containsKey(name)) {
+            Blob temp = blob(name);
+            if (!staged().get(temp.namereturn()).
                     equals(temp.hashcodereturn())) {
                 state = "modified";
             }
@@ -493,14 +1199,14 @@ public class Repo implements Serializable {
      * @return String return. */
     String statushelper2() {
         String state = "";
-        for (String nameF : _staging.keySet()) {
+        for (String nameF : staged().keySet()) {
             File temp = new File(nameF);
             if (!temp.exists()) {
                 state = temp.getName();
             }
         }
-        for (String nameF : _far.getstore().keySet()) {
-            if (!_toremove.contains(nameF)) {
+        for (String nameF : files(head()).keySet()) {
+            if (!removed().contains(nameF)) {
                 File temp = new File(nameF);
                 if (!temp.exists()) {
                     state = temp.getName();
@@ -510,46 +1216,92 @@ public class Repo implements Serializable {
         return state;
     }
 
+    /** Print the differences between the working files and the files
+     *  about to be committed: their staged contents, or else those in
+     *  the head commit. Only the files named by PATHS, or under the
+     *  directories they name, are compared, or every file if there are
+     *  no PATHS. Files whose stat data match the stat cache are taken
+     *  to be unchanged without being read.
+     * @param paths String[]. */
+    void diff(String... paths) {
+        TreeMap<String, String> expected = new TreeMap<>(files(head()));
+        expected.putAll(staged());
+        for (String name : removed()) {
+            expected.remove(name);
+        }
+        PrintWriter out = output();
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            String name = e.getKey();
+            boolean wanted = paths.length == 0;
+            for (String path : paths) {
+                String dir = path.replaceAll("/+$", "");
+                wanted |= name.equals(dir) || name.startsWith(dir + "/");
+            }
+            File file = new File(name);
+            String after = "";
+            if (!wanted) {
+                continue;
+            } else if (file.isFile()) {
+                try {
+                    String cached = index().cachedHash(name,
+                            Files.readAttributes(file.toPath(),
+                                    BasicFileAttributes.class));
+                    if (e.getValue().equals(cached)) {
+                        continue;
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                if (Utils.sha1(file).equals(e.getValue())) {
+                    continue;
+                }
+                after = Utils.readContentsAsString(file);
+            }
+            List<String> a = Diff.lines(_objects.map(e.getValue()));
+            List<String> b = Diff.lines(after);
+            out.print("diff --gitlet a/" + name + " b/" + name + "\n");
+            out.print("--- a/" + name + "\n");
+            out.print((file.isFile() ? "+++ b/" + name : "+++ /dev/null")
+                      + "\n");
+            Diff.unified(out, a, b, Diff.diff(a, b));
+        }
+        out.flush();
+    }
+
     /** Print out the status of current branch and other branch.
      * * the current branch.*/
     void status() {
-        String[] allbranch = new String[_branchmap.size()];
-        int counter1 = 0;
-        for (String temp : _branchmap.keySet()) {
-            allbranch[counter1] = temp;
-            counter1 += 1;
-        }
-        Arrays.sort(allbranch, 0, counter1);
         System.out.println("=== Branches ===");
-        for (int i = 0; i < _branchmap.size(); i++) {
-            if (allbranch[i].equals(getBranch().getname())) {
-                System.out.println("*" + allbranch[i]);
+        String current = getBranch().getname();
+        for (String name : branchNames()) {
+            if (name.equals(current)) {
+                System.out.println("*" + name);
             } else {
-                System.out.println(allbranch[i]);
+                System.out.println(name);
             }
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        String[] stagedfile = new String[_staging.size()];
+        String[] stagedfile = new String[staged().size()];
         int counter2 = 0;
-        for (String temp1 : _staging.keySet()) {
+        for (String temp1 : staged().keySet()) {
             stagedfile[counter2] = temp1;
             counter2 += 1;
         }
         Arrays.sort(stagedfile, 0, counter2);
-        for (int k = 0; k < _staging.size(); k++) {
+        for (int k = 0; k < counter2; k++) {
             System.out.println(stagedfile[k]);
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        String[] removedfile = new String[_toremove.size()];
+        String[] removedfile = new String[removed().size()];
         int counter3 = 0;
-        for (String temp2 : _toremove) {
+        for (String temp2 : removed()) {
             removedfile[counter3] = temp2;
             counter3 += 1;
         }
         Arrays.sort(removedfile, 0, counter3);
-        for (int j = 0; j < _toremove.size(); j++) {
+        for (int j = 0; j < counter3; j++) {
             System.out.println(removedfile[j]);
         }
         System.out.println();
@@ -578,8 +1330,8 @@ public class Repo implements Serializable {
         for (File file : allfile.listFiles()) {
             if (!file.isDirectory()
                     && !file.getName().equals(".DS_Store")) {
-                if (!_staging.containsKey(file.getName())
-                        && !_far.getstore().containsKey(file.getName())) {
+                if (!staged().containsKey(file.getName())
+                        && !files(head()).containsKey(file.getName())) {
                     System.out.println(file.getName());
                 }
             }
@@ -590,21 +1342,21 @@ public class Repo implements Serializable {
     /** helper funtion to print error.
      * @param branch Branch. */
     void helper2(String branch) {
-        if (!_branchmap.containsKey(branch)) {
+        if (getBranchNamed(branch) == null) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException();
         }
-        if (!_staging.isEmpty()) {
+        if (!staged().isEmpty()) {
             System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException();
         }
-        if (!_toremove.isEmpty()) {
+        if (!removed().isEmpty()) {
             System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException();
         }
-        if (_branchmap.get(branch).getcurrent()) {
+        if (getBranchNamed(branch) == getBranch()) {
             System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException();
         }
     }
 
@@ -616,38 +1368,37 @@ public class Repo implements Serializable {
     void helper3(HashMap<String, String> currTracking,
                  HashMap<String, String> branchTracking,
                  Commit splitPoint, String branch) {
-        Branch tempB = _branchmap.get(branch);
+        Commit given = getCommit(getBranchNamed(branch).getbyfar());
         for (String tem : branchTracking.keySet()) {
             if (!currTracking.containsKey(tem)) {
                 File tempfile1 = new File(tem);
                 if (tempfile1.exists()) {
                     System.out.println("There is an untracked file in the way; "
                             + "delete it or add it first.");
-                    System.exit(0);
+                    throw new GitletException();
                 }
             }
         }
-        if (splitPoint.gethashid().equals(_far.gethashid())) {
+        if (splitPoint.gethashid().equals(head().gethashid())) {
             System.out.println("Current branch fast-forwarded.");
-            for (String name : tempB.getbyfar().getstore().keySet()) {
-                checkoutID(tempB.getbyfar().gethashid(), name);
+            for (String name : files(given).keySet()) {
+                checkoutID(given.gethashid(), name);
             }
-            for (String file : getBranch().getbyfar().getstore().keySet()) {
-                if (!tempB.getbyfar().getstore().containsKey(file)) {
+            for (String file : files(head()).keySet()) {
+                if (!files(given).containsKey(file)) {
                     File tempfile = new File(file);
                     if (tempfile.exists()) {
                         boolean a = tempfile.delete();
                     }
                 }
             }
-            getBranch().changebyfar(_branchmap.get(branch).getbyfar());
-            System.exit(0);
-        } else if (splitPoint.gethashid().equals(_branchmap.
-                get(branch).getbyfar().gethashid())) {
+            getBranch().changebyfar(given.gethashid());
+            throw new GitletException();
+        } else if (splitPoint.gethashid().equals(given.gethashid())) {
             System.out.println("Given branch is an "
                     + "ancestor of the current branch.");
-            _branchmap.get(branch).changebyfar(_far);
-            System.exit(0);
+            getBranchNamed(branch).changebyfar(head().gethashid());
+            throw new GitletException();
         }
     }
 
@@ -671,9 +1422,9 @@ public class Repo implements Serializable {
                         isConflict = true;
                     }
                 } else if (!currTracking.containsKey(str)) {
-                    checkoutID(_branchmap.get(branch).
-                            getbyfar().gethashid(), str);
-                    _staging.put(str, branchTracking.get(str));
+                    checkoutID(getBranchNamed(branch).getbyfar(), str);
+                    staged().put(str, branchTracking.get(str));
+                    restage(str, branchTracking.get(str));
                 }
             }
         }
@@ -686,11 +1437,11 @@ public class Repo implements Serializable {
     void merge(String branch) throws IOException {
         boolean isConflict = false;
         helper2(branch);
-        Commit head = _branchmap.get(branch).getbyfar();
-        Commit splitPoint = splitpointFunc(_branchmap.get(branch));
-        HashMap<String, String> currTracking = _far.getstore();
-        HashMap<String, String> branchTracking = head.getstore();
-        HashMap<String, String> spTracking = splitPoint.getstore();
+        Commit head = getCommit(getBranchNamed(branch).getbyfar());
+        Commit splitPoint = splitpointFunc(getBranchNamed(branch));
+        HashMap<String, String> currTracking = files(head());
+        HashMap<String, String> branchTracking = files(head);
+        HashMap<String, String> spTracking = files(splitPoint);
         helper3(currTracking, branchTracking, splitPoint, branch);
         for (String fileName : spTracking.keySet()) {
             if (branchTracking.containsKey(fileName)
@@ -699,17 +1450,19 @@ public class Repo implements Serializable {
                         equals(spTracking.get(fileName))
                         && currTracking.get(fileName).
                         equals(spTracking.get(fileName))) {
-                    checkoutID(_branchmap.get(branch).
-                            getbyfar().gethashid(), fileName);
-                    _staging.put(fileName,
+                    checkoutID(head.gethashid(), fileName);
+                    staged().put(fileName,
                             branchTracking.get(fileName));
+                    restage(fileName, branchTracking.get(fileName));
                 } else if (!branchTracking.get(fileName).
                         equals(spTracking.get(fileName))
                     && (!currTracking.get(fileName).
                         equals(spTracking.get(fileName)))) {
                     if (!currTracking.get(fileName).
-                            equals(branchTracking.get(fileName))) {
-                        conflict(fileName, branch);
+                            equals(branchTracking.get(fileName))
+                        && mergeLines(fileName, spTracking.get(fileName),
+                            currTracking.get(fileName),
+                            branchTracking.get(fileName))) {
                         isConflict = true;
                     }
                 }
@@ -721,7 +1474,8 @@ public class Repo implements Serializable {
                     if (toDelete.exists()) {
                         boolean b = toDelete.delete();
                     }
-                    _toremove.add(fileName);
+                    removed().add(fileName);
+                    restage(fileName, null);
                 } else {
                     conflict(fileName, branch);
                     isConflict = true;
@@ -744,38 +1498,22 @@ public class Repo implements Serializable {
      * @param conflict boolean.
      * @param targetBranch targetbranch. */
     void mergedFunc(String targetBranch, boolean conflict) {
-        if (_staging.isEmpty() && _toremove.isEmpty()) {
+        if (staged().isEmpty() && removed().isEmpty()) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            HashMap<String, String> currTracking
-                    = new HashMap<String, String>();
-            currTracking.putAll(_staging);
-            for (String name : _far.getstore().keySet()) {
-                if (!currTracking.containsKey(name)) {
-                    String contents = _far.getstore().get(name);
-                    currTracking.put(name, contents);
-                }
-            }
-            for (String name : _far.getstore().keySet()) {
-                if (_toremove.contains(name)) {
-                    currTracking.remove(name);
-                }
-            }
+            Commit far = head();
+            String currTracking = stagedTree(far);
             String msg = "Merged " + targetBranch
                     + " into " + getBranch().getname() + ".";
-            String hashcode1 = _far.gethashid();
-            String hashcode2 = _branchmap.get(targetBranch).
-                    getbyfar().gethashid();
+            String hashcode1 = far.gethashid();
+            String hashcode2 = getBranchNamed(targetBranch).getbyfar();
             Date now = new Date();
             Commit commit = new Commit(currTracking, hashcode1,
                     hashcode2, msg, now);
-            _far.addchild(commit.gethashid());
-            _commitmap.put(commit.gethashid(), commit);
-            getBranch().changebyfar(commit);
-            _far = commit;
-            _staging.clear();
-            _toremove.clear();
+            addCommit(commit);
+            getBranch().changebyfar(commit.gethashid());
+            index().clear();
 
             if (conflict) {
                 System.out.println("Encountered a merge conflict.");
@@ -783,6 +1521,29 @@ public class Repo implements Serializable {
         }
     }
 
+    /** Merge the changes to FILENAME from its contents at the split
+     *  point, BASE, to those in the current branch, OURS, with the
+     *  changes to those in the given branch, THEIRS, line by line, and
+     *  stage the result. Only the lines changed on both sides in
+     *  different ways are marked as conflicts. Return true if there are
+     *  any.
+     * @param filename string.
+     * @param base string.
+     * @param ours string.
+     * @param theirs string.
+     * @return boolean return. */
+    private boolean mergeLines(String filename, String base, String ours,
+                               String theirs) {
+        Diff.Merged merged = Diff.merge(_objects.readString(base),
+                _objects.readString(ours), _objects.readString(theirs));
+        Utils.writeContents(new File(filename), merged.text());
+        String id = Utils.sha1(merged.text());
+        _objects.put(id, merged.text());
+        staged().put(filename, id);
+        restage(filename, id);
+        return merged.conflicted();
+    }
+
     /** Function to deal with conflict problem.
      * @param target string
      * @param filename name*/
@@ -792,24 +1553,24 @@ public class Repo implements Serializable {
         String newinfo = "";
         File toWrite = new File(filename);
         String content = "";
-        String oldhash = _far.getcontent(filename);
-        File readFrom = new File(".gitlet/.staging/" + oldhash);
-        String newhash = _branchmap.get(target).
-                getbyfar().getcontent(filename);
-        File readTo = new File(".gitlet/.staging/" + newhash);
+        String oldhash = files(head()).get(filename);
+        boolean readFrom = _objects.contains(oldhash);
+        String newhash = files(getCommit(getBranchNamed(target).getbyfar())).
+                get(filename);
+        boolean readTo = _objects.contains(newhash);
         content += ("<<<<<<< HEAD\n");
-        if (readFrom.exists() && readTo.exists()) {
-            oldinfo = Utils.readContentsAsString(readFrom);
-            newinfo = Utils.readContentsAsString(readTo);
+        if (readFrom && readTo) {
+            oldinfo = _objects.readString(oldhash);
+            newinfo = _objects.readString(newhash);
             content += oldinfo;
             content += "=======\n";
             content += newinfo;
-        } else if (readFrom.exists()) {
-            oldinfo = Utils.readContentsAsString(readFrom);
+        } else if (readFrom) {
+            oldinfo = _objects.readString(oldhash);
             content += oldinfo;
             content += "=======\n";
-        } else if (readTo.exists()) {
-            newinfo = Utils.readContentsAsString(readTo);
+        } else if (readTo) {
+            newinfo = _objects.readString(newhash);
             content += "=======\n";
             content += newinfo;
         }
@@ -819,87 +1580,43 @@ public class Repo implements Serializable {
         }
         boolean a = toWrite.createNewFile();
         Utils.writeContents(toWrite, content);
-        String work = Utils.readContentsAsString(toWrite);
-        File staging = new File(".gitlet/.staging/" + Utils.sha1(work));
-        boolean c = staging.createNewFile();
-        Utils.writeContents(staging, work);
-        _staging.put(filename, Utils.sha1(work));
+        String id = Utils.sha1(content);
+        _objects.put(id, content);
+        staged().put(filename, id);
+        restage(filename, id);
     }
 
     /** Helper function to splitpoint in a merge process.
      * @param br branch.
      * @return Commit return a head. */
     Commit splitpointFunc(Branch br) {
-        ArrayList<String> allparents = new ArrayList<>();
-        String commit = br.getbyfar().gethashid();
-        Commit temp = _commitmap.get(commit);
-        Stack<Commit> tempstack = new Stack<Commit>();
-        tempstack.push(temp);
-        while (!tempstack.empty()) {
-            Commit top = tempstack.pop();
-            allparents.add(top.gethashid());
-            for (String parent : top.getParents()) {
-                if (!allparents.contains(parent) && (!parent.equals(""))) {
-                    tempstack.push(_commitmap.get(parent));
-                }
-            }
-        }
-        LinkedList<Commit> theList = new LinkedList<Commit>();
-        theList.add(_far);
-        while (!theList.isEmpty()) {
-            Commit top = theList.poll();
-            if (allparents.contains(top.gethashid())) {
-                return top;
-            }
-            ArrayList<String> allParents = top.getParents();
-            for (String par : allParents) {
-                theList.add(_commitmap.get(par));
-            }
-        }
-        throw new GitletException("No split point found!");
-    }
-
-    /** Command to find all the parents of a commit.
-     * A helper function for splitpoint finder.
-     * @param commit Commit.
-     * @return allparent Arraylist as return. */
-    ArrayList<String> findParents(String commit) {
-        ArrayList<String> allparent = new ArrayList<>();
-        Commit temp = _commitmap.get(commit);
-        Stack<Commit> curr = new Stack<Commit>();
-        curr.push(temp);
-        while (!curr.empty()) {
-            Commit top = curr.pop();
-            allparent.add(top.gethashid());
-            for (String parent : top.getParents()) {
-                if (!allparent.contains(parent) && (!parent.equals(""))) {
-                    curr.push(_commitmap.get(parent));
-                }
-            }
+        String base = graph().mergeBase(head().gethashid(), br.getbyfar());
+        if (base == null) {
+            throw new GitletException("No split point found!");
         }
-        return allparent;
+        return getCommit(base);
     }
 
     /** Remote add method for ec.
      * @param filename string.
      * @param directory string. */
     void addRemote(String filename, String directory) {
-        if (_remoteDir.containsKey(filename)) {
+        if (remotes().containsKey(filename)) {
             System.out.println("A remote with that name already exists.");
             return;
         } else {
-            _remoteDir.put(filename, directory);
+            remotes().put(filename, directory);
         }
     }
 
     /** Deleting a remote.
      * @param filename string.*/
     void rmRemote(String filename) {
-        if (!_remoteDir.containsKey(filename)) {
+        if (!remotes().containsKey(filename)) {
             System.out.println("A remote with that name does not exist.");
             return;
         } else {
-            _remoteDir.remove(filename);
+            remotes().remove(filename);
         }
     }
 
@@ -908,50 +1625,24 @@ public class Repo implements Serializable {
      * @param branchremote string.
      * @param remotename string. */
     void push(String remotename, String branchremote) throws IOException {
-        File remoteFile = new File(_remoteDir.get(remotename));
+        File remoteFile = new File(remotes().get(remotename));
         if (!remoteFile.exists()) {
             System.out.println("Remote directory not found.");
             return;
         } else {
-            String address = _remoteDir.get(remotename)
-                    + "/serialized";
-            File gitletRepo = new File(address);
-            Repo git = Utils.readObject(gitletRepo, Repo.class);
-            Commit branchByfar = git
-                    ._branchmap.get(branchremote).getbyfar();
-            ArrayList<String> parents = findParents(_far.gethashid());
-            if (!parents.contains(branchByfar.gethashid())) {
+            Repo git = open(remoteFile, new ObjectCache());
+            Branch remote = git.getBranchNamed(branchremote);
+            Commit far = head();
+            if (remote != null
+                    && !graph().isAncestor(remote.getbyfar(),
+                            far.gethashid())) {
                 System.out.println("Please pull down "
                         + "remote changes before pushing.");
-                System.exit(0);
+                throw new GitletException();
             } else {
-                Commit temp = _far;
-                while (!temp.gethashid().equals(branchByfar.gethashid())) {
-                    git._commitmap.put(temp.gethashid(), temp);
-                    for (String hash : temp.getstore().values()) {
-                        File cFile =
-                                new File("./.gitlet/.staging/" + hash);
-                        File targetFile =
-                                new File(_remoteDir.get(remotename)
-                                        + "/.staging/" + hash);
-                        String streaming = Utils.readContentsAsString(cFile);
-                        if (!targetFile.exists()) {
-                            boolean t = targetFile.createNewFile();
-                        }
-                        Utils.writeContents(targetFile, streaming);
-                    }
-                    temp = _commitmap.get(temp.getparent());
-                }
-                Branch newbranch =
-                        new Branch(git.getBranch().getbyfar(), branchremote);
-                git._branchmap.put(branchremote, newbranch);
-                Commit now = git.
-                        _commitmap.get(_far.gethashid());
-                git._branchmap.
-                        get(branchremote).changebyfar(now);
-                git._far = git.
-                        _branchmap.get(branchremote).getbyfar();
-                Utils.writeObject(gitletRepo, git);
+                transfer(this, git, far.gethashid());
+                git.putBranch(branchremote, far.gethashid());
+                Repo.save(git);
             }
         }
     }
@@ -960,45 +1651,204 @@ public class Repo implements Serializable {
      * @param remotename string.
      * @param remoteBranch string. */
     void fetch(String remotename, String remoteBranch) throws IOException {
-        String remote = _remoteDir.get(remotename);
+        String remote = remotes().get(remotename);
         File file = new File(remote);
         if (!file.exists()) {
             System.out.println("Remote directory not found.");
-            System.exit(0);
+            throw new GitletException();
         } else {
-            File gitletRepo = new File(remote + "/serialized");
-            Repo git = Utils.readObject(gitletRepo, Repo.class);
-            if (!git._branchmap.containsKey(remoteBranch)) {
+            Repo git = snapshot(file, new ObjectCache());
+            if (git.getBranchNamed(remoteBranch) == null) {
                 System.out.println("That remote does not have that branch.");
-                System.exit(0);
+                throw new GitletException();
             } else {
-                Commit currBranch = git
-                        ._branchmap.get(remoteBranch).getbyfar();
-                Commit temp = currBranch;
-                while (!_commitmap.containsKey(temp.gethashid())) {
-                    this._commitmap.put(temp.gethashid(), temp);
-                    for (String hash : temp.getstore().values()) {
-                        File tFile =
-                                new File(remote + "/.staging/" + hash);
-                        File currFile =
-                                new File("./.gitlet/.staging/" + hash);
-                        String streaming = Utils.readContentsAsString(tFile);
-                        if (!currFile.exists()) {
-                            boolean a = currFile.createNewFile();
-                        }
-                        Utils.writeContents(currFile, streaming);
-                    }
-                    temp = git._commitmap.get(temp.getparent());
-                }
+                Commit currBranch = git.getCommit(
+                        git.getBranchNamed(remoteBranch).getbyfar());
+                transfer(git, this, currBranch.gethashid());
                 String name = remotename + "/" + remoteBranch;
-                Branch newbranch =
-                        new Branch(_commitmap.
-                                get(currBranch.gethashid()), name);
-                this._branchmap.put(name, newbranch);
+                putBranch(name, currBranch.gethashid());
+            }
+        }
+    }
+
+    /** Delete every commit, tree and file that cannot be reached from
+     *  a branch, including the branches fetched from remotes, or from
+     *  the staging area. If REPACK, the objects kept are then moved into
+     *  packs, which also drops the unreachable objects already packed.
+     *  The trees and files under the reachable commits are marked by a
+     *  pool of workers; the rest is dropped once no command is reading
+     *  the repository.
+     * @param repack boolean. */
+    void gc(boolean repack) {
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (String name : branchNames()) {
+            queue.add(graph().position(getBranchNamed(name).getbyfar()));
+        }
+        ArrayList<String> commits = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (pos == CommitGraph.NONE || !live.add(graph().id(pos))) {
+                continue;
+            }
+            commits.add(graph().id(pos));
+            for (int p : graph().parents(pos)) {
+                queue.add(p);
+            }
+        }
+        for (String id : staged().values()) {
+            if (live.add(id)) {
+                live.addAll(_objects.chunks(id));
             }
         }
+        live.add(Tree.emptyId());
+        int workers = Math.max(1, Math.min(commits.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            ArrayList<Future<?>> results = new ArrayList<>();
+            for (String id : commits) {
+                results.add(pool.submit(() ->
+                        mark(_objects.getCommit(id).gettree(), live)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        RepoLock.excluding(_dir, true, () -> drop(live, repack));
     }
 
+    /** Drop every commit and object not in LIVE: rewrite the commit
+     *  graph and the files derived from it with just the live commits,
+     *  and then either repack the live objects, if REPACK, or delete the
+     *  others. No reader may run meanwhile.
+     * @param live Set.
+     * @param repack boolean. */
+    private void drop(Set<String> live, boolean repack) {
+        journal();
+        CommitGraph old = graph();
+        _graph = old.retain(live);
+        int[] positions = new int[_graph.size()];
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = old.position(_graph.id(i));
+        }
+        _paths = changedPaths().retain(positions);
+        _ids.replace(_graph.ids());
+        _messages.replace(_graph.ids(), this::getCommit);
+        index().setTree(null, null);
+        if (repack) {
+            repack(live);
+        } else {
+            _objects.sweep(live);
+        }
+    }
+
+    /** Add the tree ID and everything under it to LIVE, skipping the
+     *  subtrees already in it.
+     * @param id String.
+     * @param live Set. */
+    private void mark(String id, Set<String> live) {
+        if (!live.add(id)) {
+            return;
+        }
+        for (Tree.Entry e : Tree.read(_objects, id).entries().values()) {
+            if (e.kind() == Tree.TREE) {
+                mark(e.id(), live);
+            } else if (live.add(e.id())) {
+                live.addAll(_objects.chunks(e.id()));
+            }
+        }
+    }
+
+    /** Move every object of the repository into packs. The versions of
+     *  each file and of each directory are put next to each other,
+     *  newest first, so that older versions are stored as deltas. The
+     *  old packs are replaced once no command is reading the repository.
+     */
+    void repack() {
+        RepoLock.excluding(_dir, true, () -> repack(null));
+    }
+
+    /** Move the objects of the repository into packs as for repack,
+     *  dropping those not in KEEP unless it is null.
+     * @param keep Set. */
+    private void repack(Set<String> keep) {
+        LinkedHashMap<String, ArrayList<String>> byPath =
+            new LinkedHashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        List<String> ids = commitIds();
+        for (int i = ids.size() - 1; i >= 0; i -= 1) {
+            group(getCommit(ids.get(i)).gettree(), "", byPath, seen);
+        }
+        ArrayList<String> order = new ArrayList<>();
+        for (ArrayList<String> versions : byPath.values()) {
+            order.addAll(versions);
+        }
+        for (int i = ids.size() - 1; i >= 0; i -= 1) {
+            order.add(ids.get(i));
+        }
+        _objects.repack(order, keep);
+    }
+
+    /** Add the tree ID, whose path is PATH, and everything under it not
+     *  in SEEN, to the lists of versions in BYPATH, adding them to SEEN.
+     * @param id String.
+     * @param path String.
+     * @param byPath LinkedHashMap.
+     * @param seen HashSet. */
+    private void group(String id, String path,
+                       LinkedHashMap<String, ArrayList<String>> byPath,
+                       HashSet<String> seen) {
+        if (!seen.add(id)) {
+            return;
+        }
+        byPath.computeIfAbsent(path, k -> new ArrayList<>()).add(id);
+        for (Map.Entry<String, Tree.Entry> e
+                 : Tree.read(_objects, id).entries().entrySet()) {
+            String name = path + e.getKey();
+            if (e.getValue().kind() == Tree.TREE) {
+                group(e.getValue().id(), name + "/", byPath, seen);
+            } else if (seen.add(e.getValue().id())) {
+                byPath.computeIfAbsent(name, k -> new ArrayList<>()).
+                    add(e.getValue().id());
+            }
+        }
+    }
+
+    /** Copy the commit WANT from FROM into TO, together with every
+     *  commit, tree and file under it that TO does not have. The walk
+     *  back from WANT stops at each commit TO already has, and only
+     *  the subtrees TO lacks are copied, so the work done depends on
+     *  what is missing rather than on the length of the history.
+     * @param from Repo.
+     * @param to Repo.
+     * @param want String. */
+    private static void transfer(Repo from, Repo to, String want) {
+        ArrayList<Commit> missing = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(want);
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (id.isEmpty() || !seen.add(id) || to.hasCommit(id)) {
+                continue;
+            }
+            Commit commit = from.getCommit(id);
+            missing.add(commit);
+            queue.addAll(commit.getParents());
+        }
+        CommitGraph graph = from.graph();
+        missing.sort(Comparator.comparingInt(
+                c -> graph.generation(graph.position(c.gethashid()))));
+        for (Commit c : missing) {
+            Tree.copy(from._objects, to._objects, c.gettree());
+            to.addCommit(c);
+        }
+    }
 
     /** Remote Pull instruction.
      * @param remoteBranch string.
@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/** The lock of a repository, held by a command that changes it for as
+ *  long as the command runs, so that such commands take turns. Commands
+ *  that only read the repository never take it.
+ *
+ *  The lock file also holds a sequence number, which the holder
+ *  advances just before it replaces the files naming the state of the
+ *  repository. A reader that finds the same number before and after
+ *  reading those files knows that none of them was replaced meanwhile.
+ *
+ *  Readers also hold a shared lock on a second file for as long as they
+ *  run. A command that deletes objects or packs, or rewrites the commit
+ *  graph and the files derived from it, does so only while holding that
+ *  lock exclusively, so it never takes away what a reader is reading,
+ *  and readers starting meanwhile wait until it is done.
+ *  @author Simon Zhan */
+class RepoLock {
+
+    /** Name of the lock file. **/
+    static final String NAME = "lock";
+    /** Name of the file readers hold a shared lock on. **/
+    static final String READERS = "readers";
+    /** Locks held by this process, released when its command ends. **/
+    private static final ArrayList<RepoLock> HELD = new ArrayList<>();
+
+    /** The locked file. **/
+    private final File _file;
+    /** Open lock file. **/
+    private final FileChannel _channel;
+    /** Lock on the whole of _channel. **/
+    private final FileLock _lock;
+
+    /** Constructor for the lock LOCK on FILE, held on CHANNEL.
+     * @param file File.
+     * @param channel FileChannel.
+     * @param lock FileLock. */
+    private RepoLock(File file, FileChannel channel, FileLock lock) {
+        _file = file;
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Take the lock of the repository in DIR, waiting for any other
+     *  process holding it. It is kept until release is called.
+     * @param dir File.
+     * @return RepoLock return. */
+    static RepoLock acquire(File dir) {
+        try {
+            File file = new File(dir, NAME);
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            RepoLock result = new RepoLock(file, channel, channel.lock());
+            HELD.add(result);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Note that this process reads the repository in DIR until release
+     *  is called, by taking a shared lock on its readers file. Waits
+     *  while a command is deleting or rewriting files a reader could
+     *  need. A reader that cannot open the file, as on a read-only file
+     *  system where nothing could be deleted, goes on without it.
+     * @param dir File. */
+    static void share(File dir) {
+        File file = new File(dir, READERS);
+        if (holds(file)) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            HELD.add(new RepoLock(file, channel,
+                    channel.lock(0, Long.MAX_VALUE, true)));
+        } catch (IOException excp) {
+            close(channel);
+        }
+    }
+
+    /** Run CHANGE, which deletes or rewrites files of the repository in
+     *  DIR that readers may be using, holding the readers file
+     *  exclusively, so that no reader runs meanwhile. If WAIT, wait for
+     *  the readers running now to end; otherwise leave CHANGE undone
+     *  while there are any. It is also left undone if this process reads
+     *  the repository itself. Return true if CHANGE was run.
+     * @param dir File.
+     * @param wait boolean.
+     * @param change Runnable.
+     * @return boolean return. */
+    static boolean excluding(File dir, boolean wait, Runnable change) {
+        File file = new File(dir, READERS);
+        if (holds(file)) {
+            return false;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            FileLock lock = wait ? channel.lock() : channel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            change.run();
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            close(channel);
+        }
+    }
+
+    /** Return true if this process holds a lock on FILE. Another channel
+     *  on it must then not be opened, since closing it would release
+     *  that lock on some systems.
+     * @param file File.
+     * @return boolean return. */
+    private static boolean holds(File file) {
+        for (RepoLock lock : HELD) {
+            if (lock._file.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Close CHANNEL, if not null, releasing its locks and ignoring any
+     *  failure.
+     * @param channel FileChannel. */
+    private static void close(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Release every lock taken by this process. */
+    static void release() {
+        for (RepoLock lock : HELD) {
+            try {
+                lock._lock.release();
+                lock._channel.close();
+            } catch (IOException excp) {
+                continue;
+            }
+        }
+        HELD.clear();
+    }
+
+    /** Advance the sequence number, before replacing the files naming
+     *  the state of the repository. */
+    void advance() {
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putLong(0, read(_channel) + 1);
+            _channel.write(buf, 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the sequence number of the repository in DIR, without
+     *  taking its lock.
+     * @param dir File.
+     * @return long return. */
+    static long sequence(File dir) {
+        File file = new File(dir, NAME);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return read(channel);
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the sequence number held by CHANNEL, or 0 if it holds
+     *  none yet.
+     * @param channel FileChannel.
+     * @return long return. */
+    private static long read(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) {
+                return 0;
+            }
+        }
+        return buf.getLong(0);
+    }
+}
@@ -0,0 +1,56 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Tests of the RepoLock class.
+ *  @author Simon Zhan
+ */
+public class RepoLockTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    @Test
+    public void changesWaitForTheReaders() throws IOException {
+        File dir = _dirs.dir();
+        int[] runs = new int[1];
+        assertTrue(RepoLock.excluding(dir, false, () -> runs[0] += 1));
+        RepoLock.share(dir);
+        try {
+            assertFalse(RepoLock.excluding(dir, false, () -> runs[0] += 1));
+            assertFalse(RepoLock.excluding(dir, true, () -> runs[0] += 1));
+        } finally {
+            RepoLock.release();
+        }
+        assertTrue(RepoLock.excluding(dir, true, () -> runs[0] += 1));
+        assertEquals(2, runs[0]);
+    }
+
+    @Test
+    public void gcDropsNothingWhileASnapshotIsRead() throws IOException {
+        File dir = _dirs.dir();
+        Repo.save(Repo.create(dir));
+        File objects = new File(dir, "objects");
+        String id = Utils.sha1("unreachable");
+        new ObjectStore(objects).put(id, "unreachable");
+        Repo.snapshot(dir, new ObjectCache());
+        try {
+            Repo git = new Repo(dir);
+            git.gc(false);
+            Repo.save(git);
+            assertTrue(new ObjectStore(objects).contains(id));
+        } finally {
+            RepoLock.release();
+        }
+        Repo git = new Repo(dir);
+        git.gc(false);
+        Repo.save(git);
+        assertFalse(new ObjectStore(objects).contains(id));
+    }
+}
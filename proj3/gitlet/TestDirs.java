@@ -0,0 +1,32 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.rules.TemporaryFolder;
+
+/** Temporary directories for the unit tests. Used as a JUnit rule, it
+ *  gives each test directories of its own, and deletes them, with
+ *  everything in them, once the test ends.
+ *  @author Simon Zhan */
+public class TestDirs extends TemporaryFolder {
+
+    /** Return a new empty directory.
+     * @return File return. */
+    File dir() throws IOException {
+        return newFolder();
+    }
+
+    /** Return the file NAME, not yet created, in a new directory.
+     * @param name String.
+     * @return File return. */
+    File file(String name) throws IOException {
+        return new File(newFolder(), name);
+    }
+
+    /** Return a new empty object store.
+     * @return ObjectStore return. */
+    ObjectStore store() throws IOException {
+        return new ObjectStore(newFolder());
+    }
+}
@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A snapshot of one directory: the files and subdirectories in it, each
+ *  with the id of its contents. A tree is stored as an object whose id
+ *  is the hash of its entries, so identical directories are stored once
+ *  and commits that leave a directory alone share its tree.
+ *  @author Simon Zhan */
+class Tree {
+
+    /** Kind of an entry naming file contents. **/
+    static final char BLOB = 'b';
+    /** Kind of an entry naming another tree. **/
+    static final char TREE = 't';
+
+    /** Entries of this tree, by name. **/
+    private final TreeMap<String, Entry> _entries;
+
+    /** Constructor for an empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** One named entry of a tree. */
+    static class Entry {
+        /** Kind of the entry, BLOB or TREE. **/
+        private final char _kind;
+        /** ID of the entry's contents. **/
+        private final String _id;
+
+        /** Constructor for an entry of kind KIND with contents ID.
+         * @param kind char.
+         * @param id String. */
+        Entry(char kind, String id) {
+            _kind = kind;
+            _id = id;
+        }
+
+        /** Return the kind of this entry. **/
+        char kind() {
+            return _kind;
+        }
+
+        /** Return the id of this entry's contents. **/
+        String id() {
+            return _id;
+        }
+    }
+
+    /** Return the entries of this tree, by name.
+     * @return Map return. */
+    Map<String, Entry> entries() {
+        return _entries;
+    }
+
+    /** ID of the empty tree. **/
+    private static final String EMPTY_ID = new Tree().id();
+
+    /** Return the id of the empty tree. **/
+    static String emptyId() {
+        return EMPTY_ID;
+    }
+
+    /** Return the stored form of this tree.
+     * @return byte[] return. */
+    byte[] serialize() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            result.append(e.getValue()._kind).append(' ')
+                .append(e.getValue()._id).append(' ')
+                .append(e.getKey()).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the id of this tree.
+     * @return String return. */
+    String id() {
+        return Utils.sha1(serialize());
+    }
+
+    /** Save this tree into STORE and return its id.
+     * @param store ObjectStore.
+     * @return String return. */
+    String write(ObjectStore store) {
+        byte[] bytes = serialize();
+        String id = Utils.sha1(bytes);
+        store.put(id, bytes);
+        return id;
+    }
+
+    /** Return the tree with the given id from STORE.
+     * @param store ObjectStore.
+     * @param id String.
+     * @return Tree return. */
+    static Tree read(ObjectStore store, String id) {
+        Tree result = new Tree();
+        if (id.equals(EMPTY_ID)) {
+            return result;
+        }
+        for (String line : store.readString(id).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int sp = line.indexOf(' ', 2);
+            result._entries.put(line.substring(sp + 1),
+                    new Entry(line.charAt(0), line.substring(2, sp)));
+        }
+        return result;
+    }
+
+    /** Return the id of the file or tree at PATH under the tree ID in
+     *  STORE, or null if there is none. Only the trees along PATH are
+     *  read.
+     * @param store ObjectStore.
+     * @param id String.
+     * @param path String.
+     * @return String return. */
+    static String lookup(ObjectStore store, String id, String path) {
+        Entry entry = null;
+        for (String name : path.split("/")) {
+            if (id == null) {
+                return null;
+            }
+            entry = read(store, id)._entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+            id = entry._kind == TREE ? entry._id : null;
+        }
+        return entry == null ? null : entry._id;
+    }
+
+    /** Add every file under the tree ID in STORE to OUT, mapping its
+     *  path, prefixed by PREFIX, to the id of its contents.
+     * @param store ObjectStore.
+     * @param id String.
+     * @param prefix String.
+     * @param out Map. */
+    static void flatten(ObjectStore store, String id, String prefix,
+                        Map<String, String> out) {
+        for (Map.Entry<String, Entry> e
+                 : read(store, id)._entries.entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue()._kind == TREE) {
+                flatten(store, e.getValue()._id, path + "/", out);
+            } else {
+                out.put(path, e.getValue()._id);
+            }
+        }
+    }
+
+    /** Add to OUT every path, prefixed by PREFIX, whose contents differ
+     *  between the trees FROM and TO in STORE, mapped to the id of its
+     *  contents in TO, or to null if TO does not have it. Either tree
+     *  may be null, standing for an empty one. Subtrees with the same id
+     *  in both are skipped without being read.
+     * @param store ObjectStore.
+     * @param from String.
+     * @param to String.
+     * @param prefix String.
+     * @param out Map. */
+    static void diff(ObjectStore store, String from, String to,
+                     String prefix, Map<String, String> out) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Map<String, Entry> before = from == null
+            ? new TreeMap<>() : read(store, from)._entries;
+        Map<String, Entry> after = to == null
+            ? new TreeMap<>() : read(store, to)._entries;
+        TreeMap<String, Entry> names = new TreeMap<>(before);
+        names.putAll(after);
+        for (String name : names.keySet()) {
+            Entry x = before.get(name), y = after.get(name);
+            if (x != null && y != null && x._kind == y._kind
+                    && x._id.equals(y._id)) {
+                continue;
+            }
+            String path = prefix + name;
+            String xTree = x != null && x._kind == TREE ? x._id : null;
+            String yTree = y != null && y._kind == TREE ? y._id : null;
+            if (xTree != null || yTree != null) {
+                diff(store, xTree, yTree, path + "/", out);
+            }
+            if (y != null && y._kind == BLOB) {
+                out.put(path, y._id);
+            } else if (x != null && x._kind == BLOB) {
+                out.put(path, null);
+            }
+        }
+    }
+
+    /** Return the id of the tree made from the tree ID in STORE by
+     *  applying CHANGES, which maps paths to the ids of their new
+     *  contents, or to null for paths to remove. Only the trees along
+     *  changed paths are rewritten; every other subtree is kept as it
+     *  is.
+     * @param store ObjectStore.
+     * @param id String.
+     * @param changes Map.
+     * @return String return. */
+    static String update(ObjectStore store, String id,
+                         Map<String, String> changes) {
+        return apply(store, id, changes).write(store);
+    }
+
+    /** Return the tree made from the tree ID in STORE, or from an empty
+     *  tree if ID is null, by applying CHANGES as for update. Changed
+     *  subtrees are saved into STORE, but the result itself is not.
+     * @param store ObjectStore.
+     * @param id String.
+     * @param changes Map.
+     * @return Tree return. */
+    private static Tree apply(ObjectStore store, String id,
+                              Map<String, String> changes) {
+        Tree tree = id == null ? new Tree() : read(store, id);
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    tree._entries.remove(path);
+                } else {
+                    tree._entries.put(path,
+                            new Entry(BLOB, change.getValue()));
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>()).
+                    put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> sub
+                 : below.entrySet()) {
+            Entry old = tree._entries.get(sub.getKey());
+            String oldId = old != null && old._kind == TREE ? old._id : null;
+            Tree child = apply(store, oldId, sub.getValue());
+            if (child._entries.isEmpty()) {
+                tree._entries.remove(sub.getKey());
+            } else {
+                tree._entries.put(sub.getKey(),
+                        new Entry(TREE, child.write(store)));
+            }
+        }
+        return tree;
+    }
+
+    /** Copy the tree ID and everything under it from FROM into TO,
+     *  skipping subtrees TO already has. Entries are copied before the
+     *  tree naming them, so a tree present in TO is always complete.
+     * @param from ObjectStore.
+     * @param to ObjectStore.
+     * @param id String. */
+    static void copy(ObjectStore from, ObjectStore to, String id) {
+        if (to.contains(id)) {
+            return;
+        }
+        for (Entry e : read(from, id)._entries.values()) {
+            if (e._kind == TREE) {
+                copy(from, to, e._id);
+            } else {
+                to.copyFrom(from, e._id);
+            }
+        }
+        to.copyFrom(from, id);
+    }
+}
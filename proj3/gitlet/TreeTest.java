@@ -0,0 +1,112 @@
+package gitlet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/** Tests of the Tree class.
+ *  @author Simon Zhan
+ */
+public class TreeTest {
+
+    /** Temporary directories of each test. **/
+    @Rule
+    public final TestDirs _dirs = new TestDirs();
+
+    /** Return the files under tree ID in STORE. */
+    private static HashMap<String, String> files(ObjectStore store,
+                                                 String id) {
+        HashMap<String, String> result = new HashMap<>();
+        Tree.flatten(store, id, "", result);
+        return result;
+    }
+
+    @Test
+    public void updateAndFlatten() throws IOException {
+        ObjectStore store = _dirs.store();
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a.txt", Utils.sha1("a"));
+        changes.put("d/b.txt", Utils.sha1("b"));
+        changes.put("d/e/c.txt", Utils.sha1("c"));
+        String first = Tree.update(store, Tree.emptyId(), changes);
+        assertEquals(changes, files(store, first));
+
+        HashMap<String, String> more = new HashMap<>();
+        more.put("a.txt", Utils.sha1("a2"));
+        more.put("d/e/c.txt", null);
+        String second = Tree.update(store, first, more);
+        HashMap<String, String> expected = new HashMap<>();
+        expected.put("a.txt", Utils.sha1("a2"));
+        expected.put("d/b.txt", Utils.sha1("b"));
+        assertEquals(expected, files(store, second));
+        assertFalse(Tree.read(store, Tree.read(store, second).entries()
+                              .get("d").id()).entries().containsKey("e"));
+    }
+
+    @Test
+    public void unchangedSubtreesAreShared() throws IOException {
+        ObjectStore store = _dirs.store();
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("top.txt", Utils.sha1("1"));
+        changes.put("d/e/c.txt", Utils.sha1("c"));
+        String first = Tree.update(store, Tree.emptyId(), changes);
+        HashMap<String, String> more = new HashMap<>();
+        more.put("top.txt", Utils.sha1("2"));
+        String second = Tree.update(store, first, more);
+        assertNotEquals(first, second);
+        assertEquals(Tree.read(store, first).entries().get("d").id(),
+                     Tree.read(store, second).entries().get("d").id());
+    }
+
+    @Test
+    public void sameContentsSameId() throws IOException {
+        ObjectStore store = _dirs.store();
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("x", Utils.sha1("x"));
+        changes.put("y/z", Utils.sha1("z"));
+        String first = Tree.update(store, null, changes);
+        HashMap<String, String> none = new HashMap<>();
+        none.put("y/z", null);
+        String second = Tree.update(store, first, none);
+        none.clear();
+        none.put("y/z", Utils.sha1("z"));
+        assertEquals(first, Tree.update(store, second, none));
+    }
+
+    @Test
+    public void diffSkipsSharedSubtrees() throws IOException {
+        ObjectStore store = _dirs.store();
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a", Utils.sha1("a"));
+        changes.put("same/x", Utils.sha1("x"));
+        changes.put("d/y", Utils.sha1("y"));
+        changes.put("d/z", Utils.sha1("z"));
+        String first = Tree.update(store, null, changes);
+        changes.clear();
+        changes.put("a/b", Utils.sha1("b"));
+        changes.put("d/y", Utils.sha1("y2"));
+        changes.put("d/z", null);
+        changes.put("n", Utils.sha1("n"));
+        HashMap<String, String> removeA = new HashMap<>();
+        removeA.put("a", null);
+        String second = Tree.update(store,
+                Tree.update(store, first, removeA), changes);
+        HashMap<String, String> diff = new HashMap<>();
+        Tree.diff(store, first, second, "", diff);
+        HashMap<String, String> expected = new HashMap<>();
+        expected.put("a", null);
+        expected.put("a/b", Utils.sha1("b"));
+        expected.put("d/y", Utils.sha1("y2"));
+        expected.put("d/z", null);
+        expected.put("n", Utils.sha1("n"));
+        assertEquals(expected, diff);
+        diff.clear();
+        Tree.diff(store, second, second, "", diff);
+        assertTrue(diff.isEmpty());
+        Tree.diff(store, null, first, "", diff);
+        assertEquals(files(store, first), diff);
+    }
+}
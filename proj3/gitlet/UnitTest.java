@@ -15,7 +15,13 @@ public class UnitTest {
      * the arguments of runClasses to run other JUnit tests.
      */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        textui.runClasses(UnitTest.class, CommitGraphTest.class,
+                          IdIndexTest.class, TreeTest.class,
+                          PackTest.class, MessageIndexTest.class,
+                          ChangedPathsTest.class, DiffTest.class,
+                          ChunkerTest.class, JournalTest.class,
+                          ObjectCacheTest.class, CommitTest.class,
+                          IndexTest.class, RepoLockTest.class);
     }
 
     /**
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,15 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -59,16 +62,88 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return toHex(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Size of the buffer used to hash files.
+     */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Files at least this long are hashed through memory-mapped regions
+     * of this size rather than through a buffer.
+     */
+    private static final long HASH_MAP_SIZE = 1L << 26;
+
+    /**
+     * Returns the SHA-1 hash of the contents of FILE, which is the same
+     * as sha1(readContents(FILE)).  The file is read through a fixed-size
+     * buffer, or for large files one memory-mapped region at a time, so
+     * it never has to fit in memory.  Throws IllegalArgumentException
+     * in case of problems.
+     */
+    static String sha1(File file) {
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long size = channel.size();
+            if (size >= HASH_MAP_SIZE) {
+                for (long pos = 0; pos < size; pos += HASH_MAP_SIZE) {
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                          Math.min(HASH_MAP_SIZE,
+                                                   size - pos)));
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
             }
-            return result.toString();
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /**
+     * Returns DIGEST as a hexadecimal numeral.
+     */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /**
+     * The hexadecimal digits, in order.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Returns the bytes denoted by the hexadecimal numeral HEX, which
+     * must have an even number of digits.
+     */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i,
+                                                              2 * i + 2),
+                                                16);
+        }
+        return result;
+    }
+
     /**
      * Returns the SHA-1 hash of the concatenation of VALS, which may
      * be any mixture of byte arrays and Strings.
@@ -184,6 +259,22 @@ class Utils {
         }
     }
 
+    /**
+     * Return an object of type T read from the serialized bytes CONTENTS,
+     * casting it to EXPECTEDCLASS. Throws IllegalArgumentException in
+     * case of problems.
+     */
+    static <T extends Serializable> T deserialize(byte[] contents,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(contents))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+            | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* DIRECTORIES */
 
     /**